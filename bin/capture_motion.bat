@@ -1,5 +1,5 @@
 echo off
 rem HELP:
-rem %1 - source, %2 - duration in seconds, %3 - location, %4 - lock name
+rem %1 - source, %2 - duration in seconds, %3 - location, %4 - camera name
+rem no pre-roll on Windows, the server keeps no pre-roll buffer here and never passes %5 and %6
 ffmpeg -i "%1" -vcodec copy -c:a aac -ab 64 -strict -2 -t %2 "%3"
-del /F %4.lock
@@ -1,11 +1,56 @@
 #!/bin/sh
 # HELP:
-# $1 - source, $2 - duration in seconds, $3 - location, $4 - lock name
+# $1 - source, $2 - duration in seconds, $3 - location, $4 - camera name
+# $5 - optional pre-roll MJPEG file prepended to the clip, $6 - pre-roll frame rate
+# Only the pre-roll is encoded, to the live stream's codec, size and audio layout, the live recording is joined as is.
+# The pre-roll is skipped when the live codec has no matching encoder
+
+if [ -n "$5" ] && [ -s "$5" ]; then
+    LIVE="$3.live.mp4"
+else
+    LIVE="$3"
+fi
 
 if [ -f /usr/bin/ffmpeg ]; then
-    ffmpeg -i "$1" -vcodec copy -c:a aac -ab 64 -strict -2 -t $2 "$3"
+    ffmpeg -i "$1" -vcodec copy -c:a aac -ab 64 -strict -2 -t $2 "$LIVE"
+    if [ "$LIVE" != "$3" ] && [ -s "$LIVE" ] && [ -f /usr/bin/ffprobe ]; then
+        IFS=, read CODEC WIDTH HEIGHT PIX_FMT <<EOF
+$(ffprobe -v error -select_streams v:0 -show_entries stream=codec_name,width,height,pix_fmt -of csv=p=0 "$LIVE")
+EOF
+        IFS=, read SAMPLE_RATE CHANNELS <<EOF
+$(ffprobe -v error -select_streams a:0 -show_entries stream=sample_rate,channels -of csv=p=0 "$LIVE")
+EOF
+
+        case "$CODEC" in
+            h264) ENCODER="libx264" ;;
+            hevc) ENCODER="libx265" ;;
+            *) ENCODER="" ;;
+        esac
+
+        if [ -n "$ENCODER" ]; then
+            if [ -n "$SAMPLE_RATE" ]; then
+                if [ "$CHANNELS" = "1" ]; then LAYOUT="mono"; else LAYOUT="stereo"; fi
+                SILENCE="-f lavfi -i anullsrc=r=$SAMPLE_RATE:cl=$LAYOUT -c:a aac -ab 64 -shortest"
+            else
+                SILENCE=""
+            fi
+
+            ffmpeg -f mjpeg -r $6 -i "$5" $SILENCE -vf "scale=$WIDTH:$HEIGHT,format=$PIX_FMT" \
+                -c:v $ENCODER -preset ultrafast -strict -2 -f mpegts "$3.preroll.ts" \
+                && ffmpeg -i "$LIVE" -c copy -f mpegts "$3.live.ts" \
+                && ffmpeg -i "concat:$3.preroll.ts|$3.live.ts" -map 0:v -map 0:a? -c copy -bsf:a aac_adtstoasc "$3" \
+                || rm -f "$3"
+            rm -f "$3.preroll.ts" "$3.live.ts"
+        fi
+    fi
 elif [ -f /usr/bin/avconv ]; then
-    avconv -i "$1" -vcodec copy -c:a aac -ab 64 -strict -2 -t $2 "$3"
+    avconv -i "$1" -vcodec copy -c:a aac -ab 64 -strict -2 -t $2 "$LIVE"
 fi
 
-rm $4.lock
+if [ -f "$LIVE" ] && [ "$LIVE" != "$3" ]; then
+    if [ -f "$3" ]; then
+        rm "$LIVE"
+    else
+        mv "$LIVE" "$3"
+    fi
+fi
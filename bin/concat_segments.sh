@@ -0,0 +1,9 @@
+#!/bin/sh
+# HELP:
+# $1 - segments list, $2 - location
+
+if [ -f /usr/bin/ffmpeg ]; then
+    ffmpeg -f concat -safe 0 -i "$1" -c copy -bsf:a aac_adtstoasc "$2"
+elif [ -f /usr/bin/avconv ]; then
+    avconv -f concat -safe 0 -i "$1" -c copy -bsf:a aac_adtstoasc "$2"
+fi
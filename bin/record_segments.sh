@@ -0,0 +1,13 @@
+#!/bin/sh
+# HELP:
+# $1 - source, $2 - segment duration in seconds, $3 - spool directory
+
+mkdir -p "$3"
+
+if [ -f /usr/bin/ffmpeg ]; then
+    exec ffmpeg -rtsp_transport tcp -i "$1" -map 0 -vcodec copy -c:a aac -ab 64 -strict -2 \
+        -f segment -segment_time $2 -reset_timestamps 1 -strftime 1 "$3/%s.ts"
+elif [ -f /usr/bin/avconv ]; then
+    exec avconv -rtsp_transport tcp -i "$1" -map 0 -vcodec copy -c:a aac -ab 64 -strict -2 \
+        -f segment -segment_time $2 -reset_timestamps 1 -strftime 1 "$3/%s.ts"
+fi
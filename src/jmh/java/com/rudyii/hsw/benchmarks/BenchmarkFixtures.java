@@ -0,0 +1,50 @@
+package com.rudyii.hsw.benchmarks;
+
+import com.rudyii.hsw.configuration.LocalOptions;
+import com.rudyii.hsw.configuration.OptionsService;
+import com.rudyii.hsw.motion.Camera;
+import com.rudyii.hsw.objects.CameraDetectionSettings;
+import com.rudyii.hsw.objects.events.EventBase;
+import com.rudyii.hsw.services.EventService;
+
+public class BenchmarkFixtures {
+    public static final String CAMERA_NAME = "Benchmark";
+
+    public static EventService silentEventService() {
+        return new EventService() {
+            @Override
+            public void publish(EventBase event) {
+            }
+        };
+    }
+
+    public static Camera camera() {
+        Camera camera = new Camera(null, null, null, null, null, null);
+        camera.setCameraName(CAMERA_NAME);
+        camera.setJpegUrl("http://127.0.0.1/snapshot.cgi");
+        camera.setNoiseLevel(7L);
+        camera.setMotionArea(100L);
+        camera.setInterval(500L);
+        return camera;
+    }
+
+    public static OptionsService optionsService(EventService eventService, Camera camera) {
+        return LocalOptions.of(eventService, camera);
+    }
+
+    // the camera's own settings, built directly so the motion area is never printed while measuring
+    public static CameraDetectionSettings detectionSettings(Camera camera) {
+        return CameraDetectionSettings.builder()
+                .interval(camera.getInterval())
+                .noiseLevel((int) camera.getNoiseLevel())
+                .motionArea(camera.getMotionArea())
+                .detectionResolution((int) camera.getDetectionResolution())
+                .detectionMode(camera.getDetectionMode())
+                .minBlobArea(camera.getMinBlobArea())
+                .ignoreRegions(camera.getIgnoreRegions())
+                .motionEventWindow(camera.getMotionEventWindow())
+                .showMotionArea(false)
+                .vectorizedDiff(false)
+                .build();
+    }
+}
@@ -0,0 +1,59 @@
+package com.rudyii.hsw.benchmarks;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_3BYTE_BGR;
+
+public class SyntheticFrames {
+    private static final long SEED = 42L;
+
+    public static BufferedImage background(String resolution) {
+        int width = widthOf(resolution);
+        int height = heightOf(resolution);
+        Random random = new Random(SEED);
+
+        BufferedImage image = new BufferedImage(width, height, TYPE_3BYTE_BGR);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int light = (x * 255 / width + y * 255 / height) / 2 + random.nextInt(8);
+                int clamped = Math.min(light, 255);
+                image.setRGB(x, y, clamped << 16 | clamped << 8 | clamped);
+            }
+        }
+
+        return image;
+    }
+
+    public static BufferedImage withMovingObject(BufferedImage background, int motionAreaPercentage) {
+        BufferedImage image = new BufferedImage(background.getWidth(), background.getHeight(), background.getType());
+        Graphics2D graphics = image.createGraphics();
+        graphics.drawImage(background, 0, 0, null);
+
+        int side = (int) Math.sqrt(background.getWidth() * background.getHeight() * motionAreaPercentage / 100.0);
+        graphics.setColor(Color.ORANGE);
+        graphics.fillRect(background.getWidth() / 3, background.getHeight() / 4, side, side);
+        graphics.dispose();
+
+        return image;
+    }
+
+    public static byte[] toJpeg(BufferedImage image) throws IOException {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "JPG", bos);
+            return bos.toByteArray();
+        }
+    }
+
+    private static int widthOf(String resolution) {
+        return Integer.parseInt(resolution.split("x")[0]);
+    }
+
+    private static int heightOf(String resolution) {
+        return Integer.parseInt(resolution.split("x")[1]);
+    }
+}
@@ -0,0 +1,16 @@
+package com.rudyii.hsw.configuration;
+
+import com.rudyii.hsw.motion.Camera;
+import com.rudyii.hsw.services.EventService;
+
+import java.util.Collections;
+
+// OptionsService holding the local defaults of a single camera, the Firebase listeners are never registered
+public class LocalOptions {
+
+    public static OptionsService of(EventService eventService, Camera camera) {
+        OptionsService optionsService = new OptionsService(eventService, null, Collections.singletonList(camera));
+        optionsService.loadLocalOptions();
+        return optionsService;
+    }
+}
@@ -0,0 +1,34 @@
+package com.rudyii.hsw.configuration;
+
+import com.rudyii.hsw.benchmarks.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.rudyii.hsw.benchmarks.BenchmarkFixtures.CAMERA_NAME;
+import static com.rudyii.hsw.configuration.OptionsService.NOISE_LEVEL;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionsServiceBenchmark {
+    private OptionsService optionsService;
+
+    @Setup
+    public void setUp() {
+        this.optionsService = BenchmarkFixtures.optionsService(BenchmarkFixtures.silentEventService(), BenchmarkFixtures.camera());
+    }
+
+    @Benchmark
+    public long getCameraOptionsNoiseLevel() {
+        return (long) optionsService.getCameraOptions(CAMERA_NAME).get(NOISE_LEVEL);
+    }
+
+    @Benchmark
+    public int getDetectionSettingsNoiseLevel() {
+        return optionsService.getDetectionSettings(CAMERA_NAME).getNoiseLevel();
+    }
+}
@@ -0,0 +1,60 @@
+package com.rudyii.hsw.motion;
+
+import com.rudyii.hsw.benchmarks.BenchmarkFixtures;
+import com.rudyii.hsw.benchmarks.SyntheticFrames;
+import com.rudyii.hsw.configuration.OptionsService;
+import com.rudyii.hsw.objects.CameraDetectionSettings;
+import com.rudyii.hsw.services.EventService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CameraMotionDetectorBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    private String resolution;
+
+    @Param({"0", "320"})
+    private long detectionResolution;
+
+    private CameraMotionDetector detector;
+    private CameraDetectionSettings settings;
+    private byte[][] frames;
+    private int tick;
+
+    @Setup
+    public void setUp() throws Exception {
+        Camera camera = BenchmarkFixtures.camera();
+        camera.setDetectionResolution(detectionResolution);
+        EventService eventService = BenchmarkFixtures.silentEventService();
+
+        OptionsService optionsService = BenchmarkFixtures.optionsService(eventService, camera);
+        this.settings = BenchmarkFixtures.detectionSettings(camera);
+        this.detector = new CameraMotionDetector(eventService, optionsService, null, null,
+                new FrameHandleFactory(new SimpleMeterRegistry()), new FrameDecoderFactory());
+        detector.on(camera);
+
+        BufferedImage background = SyntheticFrames.background(resolution);
+        BufferedImage moved = SyntheticFrames.withMovingObject(background, 10);
+        this.frames = new byte[][]{SyntheticFrames.toJpeg(background), SyntheticFrames.toJpeg(moved)};
+        detector.detect(frames[1], settings);
+    }
+
+    @TearDown
+    public void tearDown() {
+        detector.stop();
+    }
+
+    @Benchmark
+    public void detect() throws IOException {
+        detector.detect(frames[tick++ & 1], settings);
+    }
+}
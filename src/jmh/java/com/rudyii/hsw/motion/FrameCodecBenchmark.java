@@ -0,0 +1,70 @@
+package com.rudyii.hsw.motion;
+
+import com.rudyii.hsw.benchmarks.SyntheticFrames;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameCodecBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    private String resolution;
+
+    private byte[] jpeg;
+    private BufferedImage decoded;
+    private FramePool framePool;
+    private FrameDecoder frameDecoder;
+    private LumaFrame lumaFrame;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.jpeg = SyntheticFrames.toJpeg(SyntheticFrames.withMovingObject(SyntheticFrames.background(resolution), 10));
+        this.decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        this.framePool = new FramePool();
+        this.frameDecoder = new FrameDecoderFactory().newDecoder();
+        this.lumaFrame = new LumaFrame();
+    }
+
+    @TearDown
+    public void tearDown() {
+        frameDecoder.close();
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    // compare gc.alloc.rate.norm with decode under -prof gc, libjpeg-turbo is used when its binding is on the classpath
+    @Benchmark
+    public BufferedImage pooledDecode() throws IOException {
+        BufferedImage image = frameDecoder.decode(jpeg, 0, jpeg.length, framePool);
+        framePool.recycle(image);
+        return image;
+    }
+
+    // what a detection tick decodes with detectionResolution = 320
+    @Benchmark
+    public LumaFrame lumaDecode() throws IOException {
+        frameDecoder.decodeLuma(jpeg, 0, jpeg.length, 320, lumaFrame, framePool);
+        return lumaFrame;
+    }
+
+    @Benchmark
+    public byte[] reEncodeMotionImage() throws IOException {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+            ImageIO.write(decoded, "JPG", bos);
+            return bos.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.rudyii.hsw.motion;
+
+import com.rudyii.hsw.benchmarks.SyntheticFrames;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameDiffEngineBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    private String resolution;
+
+    @Param({"SCALAR", "SWAR"})
+    private String engine;
+
+    private FrameDiffEngine frameDiffEngine;
+    private LumaFrame previous, current;
+    private RegionMask regionMask;
+    private MotionMask motionMask;
+
+    @Setup
+    public void setUp() {
+        this.frameDiffEngine = engine.equals("SWAR") ? new SwarFrameDiffEngine() : new ScalarFrameDiffEngine();
+
+        BufferedImage background = SyntheticFrames.background(resolution);
+        this.previous = new LumaFrame();
+        this.current = new LumaFrame();
+        previous.load(background, 0);
+        current.load(SyntheticFrames.withMovingObject(background, 10), 0);
+
+        this.regionMask = new RegionMask();
+        regionMask.compile("", current.getWidth(), current.getHeight(), current.getScale());
+        this.motionMask = new MotionMask();
+    }
+
+    @Benchmark
+    public int diff() {
+        motionMask.reset(current.getWidth(), current.getHeight());
+        return frameDiffEngine.diff(previous, current, 7, regionMask, motionMask);
+    }
+}
@@ -1,15 +1,10 @@
 package com.rudyii.hsw.actions;
 
-import com.rudyii.hsw.actions.base.InternetBasedAction;
 import com.rudyii.hsw.objects.Attachment;
 import com.rudyii.hsw.objects.Client;
 import com.rudyii.hsw.providers.EmailDetailsProvider;
 import com.rudyii.hsw.services.ClientsService;
-import com.rudyii.hsw.services.IspService;
-import lombok.extern.slf4j.Slf4j;
 import org.simplejavamail.email.Email;
-import org.simplejavamail.mailer.Mailer;
-import org.simplejavamail.mailer.config.TransportStrategy;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
@@ -18,21 +13,21 @@ import java.util.ArrayList;
 
 import static com.rudyii.hsw.helpers.StringUtils.stringIsNotEmptyOrNull;
 
-@Slf4j
 @Component
 @Scope(value = "prototype")
-public class MailSendAction extends InternetBasedAction implements Runnable {
+public class MailSendAction implements Runnable {
     private final EmailDetailsProvider emailDetailsProvider;
     private final ClientsService clientsService;
+    private final NotificationDispatcher notificationDispatcher;
     private String subject;
     private ArrayList<String> body;
     private ArrayList<Attachment> attachments;
 
-    public MailSendAction(IspService ispService, EmailDetailsProvider emailDetailsProvider,
-                          ClientsService clientsService) {
-        super(ispService);
+    public MailSendAction(EmailDetailsProvider emailDetailsProvider, ClientsService clientsService,
+                          NotificationDispatcher notificationDispatcher) {
         this.emailDetailsProvider = emailDetailsProvider;
         this.clientsService = clientsService;
+        this.notificationDispatcher = notificationDispatcher;
     }
 
     public MailSendAction withData(String subject, ArrayList<String> body, ArrayList<Attachment> attachments) {
@@ -47,13 +42,7 @@ public class MailSendAction extends InternetBasedAction implements Runnable {
     public void run() {
         Email email = buildEmail();
 
-        ensureInternetIsAvailable();
-
-        if (email != null) buildMailer().sendMail(email);
-    }
-
-    private Mailer buildMailer() {
-        return new Mailer(emailDetailsProvider.getSmptServer(), emailDetailsProvider.getSmtpPort(), emailDetailsProvider.getUsername(), emailDetailsProvider.getPassword(), TransportStrategy.SMTP_TLS);
+        if (email != null) notificationDispatcher.dispatchMail(email);
     }
 
     public Email buildEmail() {
@@ -0,0 +1,271 @@
+package com.rudyii.hsw.actions;
+
+import com.rudyii.hsw.enums.FcmMessageEnum;
+import com.rudyii.hsw.helpers.FCMSender;
+import com.rudyii.hsw.objects.NotificationPayload;
+import com.rudyii.hsw.providers.EmailDetailsProvider;
+import com.rudyii.hsw.services.IspService;
+import lombok.extern.slf4j.Slf4j;
+import org.simplejavamail.email.Email;
+import org.simplejavamail.mailer.Mailer;
+import org.simplejavamail.mailer.config.TransportStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Pushes go out on the async FCM client and only come back here through callbacks, mails go through one SMTP
+// connection on a dedicated thread, so neither holds a shared pool thread while the remote side is slow.
+// A recipient whose push failed gets its own retry queue, retried one message at a time with exponential backoff,
+// messages that run out of attempts are logged as dead letters.
+// Connectivity is a cached flag refreshed on a schedule, sends never wait for a ping, failed sends drive the retries
+@Slf4j
+@Component
+public class NotificationDispatcher {
+    private static final long OFFLINE_DELAY = 30000L;
+    private static final long MAX_RETRY_DELAY = 300000L;
+
+    private final FCMSender fcmSender;
+    private final IspService ispService;
+    private final EmailDetailsProvider emailDetailsProvider;
+    private final Map<String, RecipientQueue> retryQueues = new ConcurrentHashMap<>();
+    private ScheduledExecutorService retryScheduler;
+    private ExecutorService mailExecutor;
+    private Mailer mailer;
+    private Transport transport;
+    private volatile boolean online = true;
+
+    @Value("#{hswProperties['notification.max.attempts'] ?: 5}")
+    private int maxAttempts;
+
+    @Value("#{hswProperties['notification.retry.delay.ms'] ?: 2000}")
+    private long retryDelay;
+
+    @Autowired
+    public NotificationDispatcher(FCMSender fcmSender, IspService ispService, EmailDetailsProvider emailDetailsProvider) {
+        this.fcmSender = fcmSender;
+        this.ispService = ispService;
+        this.emailDetailsProvider = emailDetailsProvider;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notification-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.mailExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mail-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        retryScheduler.shutdownNow();
+        mailExecutor.shutdown();
+        mailExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        closeTransport();
+    }
+
+    @Scheduled(initialDelayString = "30000", fixedDelayString = "30000")
+    public void checkConnectivity() {
+        this.online = ispService.internetIsAvailable();
+    }
+
+    // recipients are keyed by token, names are only used for logging
+    public void dispatchFcm(Map<String, String> recipients, NotificationPayload payload) {
+        if (!online) {
+            log.info("Internet is unavailable, postponing message to {} for {} ms", recipients.values(), OFFLINE_DELAY);
+            retryScheduler.schedule(() -> dispatchFcm(recipients, payload), OFFLINE_DELAY, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        List<String> tokens = new ArrayList<>(recipients.keySet());
+        fcmSender.sendData(tokens, payload).whenComplete((results, error) -> {
+            if (error == null && (results == null || results.size() != tokens.size())) {
+                log.warn("Got {} FCM results for {} recipients, the missing ones are retried", results == null ? 0 : results.size(), tokens.size());
+            }
+
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                FcmMessageEnum result = resultOf(results, error, i);
+                if (onFcmResult(recipients.get(token), result, error, 1)) {
+                    retryQueue(token, recipients.get(token)).offer(new PendingMessage(payload));
+                }
+            }
+        });
+    }
+
+    public void dispatchMail(Email email) {
+        mailExecutor.submit(() -> sendMail(email, 1));
+    }
+
+    // a recipient without a result is treated as failed
+    private static FcmMessageEnum resultOf(List<FcmMessageEnum> results, Throwable error, int index) {
+        if (error != null || results == null || index >= results.size() || results.get(index) == null) {
+            return FcmMessageEnum.FAIL;
+        }
+        return results.get(index);
+    }
+
+    // returns true when the message has to be retried
+    private boolean onFcmResult(String name, FcmMessageEnum result, Throwable error, int attempt) {
+        switch (result) {
+            case SUCCESS:
+                log.info("FCMessage successfully sent to: {}", name);
+                return false;
+            case WARNING:
+                log.warn("FCMessage was not sent to: {} due to some internal Google issue.", name);
+                return false;
+            default:
+                if (attempt >= maxAttempts) {
+                    log.error("Dead letter: FCMessage to {} dropped after {} attempts", name, attempt, error);
+                    return false;
+                }
+                log.warn("Failed to send FCMessage to: {}, attempt {} of {}", name, attempt, maxAttempts, error);
+                return true;
+        }
+    }
+
+    private RecipientQueue retryQueue(String token, String name) {
+        return retryQueues.computeIfAbsent(token, key -> new RecipientQueue(key, name));
+    }
+
+    private void sendMail(Email email, int attempt) {
+        if (!online) {
+            log.info("Internet is unavailable, postponing email '{}' for {} ms", email.getSubject(), OFFLINE_DELAY);
+            schedule(() -> mailExecutor.submit(() -> sendMail(email, attempt)), OFFLINE_DELAY);
+            return;
+        }
+
+        try {
+            Transport connected = connectedTransport();
+            MimeMessage message = Mailer.produceMimeMessage(email, mailer.getSession());
+            message.saveChanges();
+            connected.sendMessage(message, message.getAllRecipients());
+            log.info("Email '{}' sent to {} recipients", email.getSubject(), email.getRecipients().size());
+        } catch (Exception e) {
+            closeTransport();
+            if (attempt >= maxAttempts) {
+                log.error("Dead letter: email '{}' dropped after {} attempts", email.getSubject(), attempt, e);
+                return;
+            }
+            log.warn("Failed to send email '{}', attempt {} of {}", email.getSubject(), attempt, maxAttempts, e);
+            schedule(() -> mailExecutor.submit(() -> sendMail(email, attempt + 1)), backoff(attempt));
+        }
+    }
+
+    private Transport connectedTransport() throws MessagingException {
+        if (mailer == null) {
+            this.mailer = new Mailer(emailDetailsProvider.getSmptServer(), emailDetailsProvider.getSmtpPort(), emailDetailsProvider.getUsername(), emailDetailsProvider.getPassword(), TransportStrategy.SMTP_TLS);
+        }
+
+        if (transport == null || !transport.isConnected()) {
+            Session session = mailer.getSession();
+            this.transport = session.getTransport();
+            transport.connect(emailDetailsProvider.getSmptServer(), emailDetailsProvider.getSmtpPort(), emailDetailsProvider.getUsername(), emailDetailsProvider.getPassword());
+        }
+
+        return transport;
+    }
+
+    private void closeTransport() {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.debug("Failed to close SMTP transport", e);
+            }
+            this.transport = null;
+        }
+    }
+
+    private long backoff(int attempt) {
+        return Math.min(MAX_RETRY_DELAY, retryDelay << Math.min(attempt - 1, 16));
+    }
+
+    private void schedule(Runnable task, long delay) {
+        if (!retryScheduler.isShutdown()) {
+            retryScheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final class RecipientQueue {
+        private final String token;
+        private final String name;
+        private final Deque<PendingMessage> messages = new ArrayDeque<>();
+        private boolean sending;
+
+        private RecipientQueue(String token, String name) {
+            this.token = token;
+            this.name = name;
+        }
+
+        private synchronized void offer(PendingMessage message) {
+            messages.addLast(message);
+            if (!sending) {
+                this.sending = true;
+                schedule(this::sendHead, backoff(1));
+            }
+        }
+
+        private void sendHead() {
+            PendingMessage head;
+            synchronized (this) {
+                head = messages.peekFirst();
+                if (head == null) {
+                    this.sending = false;
+                    return;
+                }
+            }
+
+            if (!online) {
+                schedule(this::sendHead, OFFLINE_DELAY);
+                return;
+            }
+
+            head.attempt++;
+            fcmSender.sendData(Collections.singletonList(token), head.payload).whenComplete((results, error) -> {
+                FcmMessageEnum result = resultOf(results, error, 0);
+                if (onFcmResult(name, result, error, head.attempt)) {
+                    schedule(this::sendHead, backoff(head.attempt));
+                } else {
+                    synchronized (this) {
+                        messages.pollFirst();
+                    }
+                    schedule(this::sendHead, 0);
+                }
+            });
+        }
+    }
+
+    private static final class PendingMessage {
+        private final NotificationPayload payload;
+        private int attempt = 1;
+
+        private PendingMessage(NotificationPayload payload) {
+            this.payload = payload;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.rudyii.hsw.actions;
 
 import com.google.common.net.MediaType;
 import com.rudyii.hsw.actions.base.InternetBasedAction;
+import com.rudyii.hsw.objects.FrameHandle;
 import com.rudyii.hsw.objects.events.UploadEvent;
 import com.rudyii.hsw.providers.StorageProvider;
 import com.rudyii.hsw.services.EventService;
@@ -9,14 +10,10 @@ import com.rudyii.hsw.services.IspService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
-import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.net.URL;
 
 @Slf4j
 @Component
@@ -25,7 +22,7 @@ public class UploadAction extends InternetBasedAction implements Runnable {
     private final StorageProvider storageProvider;
     private final EventService eventService;
     private File uploadCandidate;
-    private BufferedImage image;
+    private FrameHandle frame;
     private String cameraName;
 
     @Autowired
@@ -46,24 +43,29 @@ public class UploadAction extends InternetBasedAction implements Runnable {
         uploadFile();
     }
 
-    @Async
-    void uploadFile() {
+    public boolean uploadFile() {
         try {
-            InputStream in = new BufferedInputStream(new FileInputStream(uploadCandidate));
+            URL videoUrl = storageProvider.putData(uploadCandidate.getName(), MediaType.MP4_VIDEO, uploadCandidate);
             eventService.publish(UploadEvent.builder()
                     .cameraName(cameraName)
                     .fileName(uploadCandidate.getName())
-                    .videoUrl(storageProvider.putData(uploadCandidate.getName(), MediaType.MP4_VIDEO, in))
-                    .image(image)
+                    .videoUrl(videoUrl)
+                    .frame(frame)
                     .build());
             uploadCandidate.delete();
+            return true;
         } catch (Exception e) {
+            if (frame != null) {
+                frame.release();
+            }
             log.error("Upload to FAILED!", e);
+            return false;
         }
     }
 
-    public UploadAction andImage(BufferedImage image) {
-        this.image = image;
+    // the action takes over the frame reference, the published UploadEvent releases it
+    public UploadAction andFrame(FrameHandle frame) {
+        this.frame = frame;
 
         return this;
     }
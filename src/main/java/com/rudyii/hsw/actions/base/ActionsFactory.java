@@ -1,29 +1,33 @@
 package com.rudyii.hsw.actions.base;
 
-import com.google.gson.JsonObject;
 import com.rudyii.hsw.actions.FcmMessageSendAction;
 import com.rudyii.hsw.actions.MailSendAction;
-import com.rudyii.hsw.actions.UploadAction;
 import com.rudyii.hsw.objects.Attachment;
+import com.rudyii.hsw.objects.FrameHandle;
+import com.rudyii.hsw.objects.NotificationPayload;
+import com.rudyii.hsw.services.UploadQueueService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Map;
 
 @Component
 public class ActionsFactory {
     private final ApplicationContext context;
     private final ThreadPoolTaskExecutor hswExecutor;
+    private final UploadQueueService uploadQueueService;
 
     @Autowired
-    public ActionsFactory(ApplicationContext context, ThreadPoolTaskExecutor hswExecutor) {
+    public ActionsFactory(ApplicationContext context, ThreadPoolTaskExecutor hswExecutor,
+                          UploadQueueService uploadQueueService) {
         this.context = context;
         this.hswExecutor = hswExecutor;
+        this.uploadQueueService = uploadQueueService;
     }
 
     @Async
@@ -32,15 +36,12 @@ public class ActionsFactory {
     }
 
     @Async
-    public void orderMessageSendAction(String name, String recipientToken, JsonObject messageData) {
-        hswExecutor.submit(context.getBean(FcmMessageSendAction.class).withData(name, recipientToken, messageData));
+    public void orderMessageSendAction(Map<String, String> recipients, NotificationPayload payload) {
+        hswExecutor.submit(context.getBean(FcmMessageSendAction.class).withData(recipients, payload));
     }
 
     @Async
-    public void orderUploadAction(String cameraName, File uploadCandidate, BufferedImage image) {
-        hswExecutor.submit(context.getBean(UploadAction.class)
-                .withUploadCandidate(uploadCandidate)
-                .withCameraName(cameraName)
-                .andImage(image));
+    public void orderUploadAction(String cameraName, File uploadCandidate, FrameHandle frame) {
+        uploadQueueService.enqueue(cameraName, uploadCandidate, frame);
     }
 }
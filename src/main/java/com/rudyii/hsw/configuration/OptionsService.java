@@ -5,7 +5,9 @@ import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.ValueEventListener;
 import com.rudyii.hsw.database.FirebaseDatabaseProvider;
+import com.rudyii.hsw.enums.DetectionModeEnum;
 import com.rudyii.hsw.motion.Camera;
+import com.rudyii.hsw.objects.CameraDetectionSettings;
 import com.rudyii.hsw.objects.events.OptionsChangedEvent;
 import com.rudyii.hsw.objects.events.ServerKeyUpdatedEvent;
 import com.rudyii.hsw.services.EventService;
@@ -17,8 +19,10 @@ import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -27,6 +31,7 @@ import java.util.concurrent.ConcurrentHashMap;
 public class OptionsService {
     public static final String RECORD_INTERVAL = "recordInterval";
     public static final String SHOW_MOTION_AREA = "showMotionArea";
+    public static final String VECTORIZED_DIFF = "vectorizedDiff";
     public static final String HOURLY_REPORT_ENABLED = "hourlyReportEnabled";
     public static final String HOURLY_REPORT_FORCED = "hourlyReportForced";
     public static final String MONITORING_ENABLED = "monitoringEnabled";
@@ -42,6 +47,12 @@ public class OptionsService {
     public static final String INTERVAL = "interval";
     public static final String CAMERAS = "cameras";
     public static final String USE_MOTION_OBJECT = "useMotionObject";
+    public static final String DETECTION_RESOLUTION = "detectionResolution";
+    public static final String DETECTION_MODE = "detectionMode";
+    public static final String MIN_BLOB_AREA = "minBlobArea";
+    public static final String IGNORE_REGIONS = "ignoreRegions";
+    public static final String MOTION_EVENT_WINDOW = "motionEventWindow";
+    public static final String CROP_TO_MOTION = "cropToMotion";
 
     private final ConcurrentHashMap<String, Object> localOptions = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Object> localCamerasOptions = new ConcurrentHashMap<>();
@@ -50,6 +61,7 @@ public class OptionsService {
     private final EventService eventService;
     private final FirebaseDatabaseProvider databaseProvider;
     private final List<Camera> cameras;
+    private volatile Map<String, CameraDetectionSettings> detectionSettings = Collections.emptyMap();
     private boolean initComplete;
 
     @Autowired
@@ -62,9 +74,19 @@ public class OptionsService {
 
     @PostConstruct
     private void populateDefaultOptions() {
+        loadLocalOptions();
+
+        syncCameras();
+
+        registerListeners();
+    }
+
+    // the local defaults and camera options without the Firebase sync, benchmarks and tests stop here
+    void loadLocalOptions() {
         //Motion detection settings
         localOptions.put(RECORD_INTERVAL, 10L);
         localOptions.put(SHOW_MOTION_AREA, true);
+        localOptions.put(VECTORIZED_DIFF, false);
 
         //Reporting settings
         localOptions.put(HOURLY_REPORT_ENABLED, true);
@@ -80,10 +102,7 @@ public class OptionsService {
         localOptions.put(DELAYED_ARM_INTERVAL, 60L);
 
         fillOptionsFromCameras();
-
-        syncCameras();
-
-        registerListeners();
+        rebuildDetectionSettings();
     }
 
     private void registerListeners() {
@@ -125,6 +144,7 @@ public class OptionsService {
                 if (optionsUpdated) {
                     optionsUpdated = false;
                     log.warn("Options updated, firing event");
+                    rebuildDetectionSettings();
                     OptionsChangedEvent optionsChangedEvent = new OptionsChangedEvent(localOptions);
 
                     if (!OptionsService.this.initComplete) {
@@ -207,14 +227,129 @@ public class OptionsService {
             cameraOptions.put(REBOOT_TIMEOUT, rebootTimeout);
             cameraOptions.put(MOTION_AREA, motionArea);
             cameraOptions.put(NOISE_LEVEL, noiseLevel);
+            cameraOptions.put(DETECTION_RESOLUTION, camera.getDetectionResolution());
+            cameraOptions.put(DETECTION_MODE, camera.getDetectionMode().toString());
+            cameraOptions.put(MIN_BLOB_AREA, camera.getMinBlobArea());
+            cameraOptions.put(IGNORE_REGIONS, camera.getIgnoreRegions());
+            cameraOptions.put(MOTION_EVENT_WINDOW, camera.getMotionEventWindow());
             cameraOptions.put(HEALTH_CHECK_ENABLED, camera.isHealthCheckEnabled());
             cameraOptions.put(CONTINUOUS_MONITORING, camera.isContinuousMonitoring());
             cameraOptions.put(USE_MOTION_OBJECT, false);
+            cameraOptions.put(CROP_TO_MOTION, false);
 
             localCamerasOptions.put(cameraName, cameraOptions);
         });
     }
 
+    // values come straight from Firebase, a mistyped one keeps the camera's current setting instead of failing the
+    // whole options update
+    void rebuildDetectionSettings() {
+        HashMap<String, CameraDetectionSettings> settings = new HashMap<>();
+
+        localCamerasOptions.forEach((cameraName, options) -> {
+            Map<String, Object> cameraOptions = (Map<String, Object>) options;
+            CameraDetectionSettings current = detectionSettings.get(cameraName);
+            if (current == null) {
+                current = defaultDetectionSettings(cameraName);
+            }
+
+            settings.put(cameraName, CameraDetectionSettings.builder()
+                    .interval(longOption(cameraName, cameraOptions, INTERVAL, current.getInterval()))
+                    .noiseLevel((int) longOption(cameraName, cameraOptions, NOISE_LEVEL, current.getNoiseLevel()))
+                    .motionArea(longOption(cameraName, cameraOptions, MOTION_AREA, current.getMotionArea()))
+                    .detectionResolution((int) longOption(cameraName, cameraOptions, DETECTION_RESOLUTION, current.getDetectionResolution()))
+                    .detectionMode(detectionModeOption(cameraName, cameraOptions, current.getDetectionMode()))
+                    .minBlobArea(longOption(cameraName, cameraOptions, MIN_BLOB_AREA, current.getMinBlobArea()))
+                    .ignoreRegions(stringOption(cameraName, cameraOptions, IGNORE_REGIONS, current.getIgnoreRegions()))
+                    .motionEventWindow(longOption(cameraName, cameraOptions, MOTION_EVENT_WINDOW, current.getMotionEventWindow()))
+                    .showMotionArea(booleanOption(cameraName, localOptions, SHOW_MOTION_AREA, current.isShowMotionArea()))
+                    .vectorizedDiff(booleanOption(cameraName, localOptions, VECTORIZED_DIFF, current.isVectorizedDiff()))
+                    .build());
+        });
+
+        this.detectionSettings = Collections.unmodifiableMap(settings);
+    }
+
+    // the camera's own configuration, or the defaults of an unconfigured camera
+    private CameraDetectionSettings defaultDetectionSettings(String cameraName) {
+        Camera camera = cameras.stream()
+                .filter(candidate -> cameraName.equals(candidate.getCameraName()))
+                .findFirst()
+                .orElseGet(() -> new Camera(null, null, null, null, null, null));
+
+        return CameraDetectionSettings.builder()
+                .interval(camera.getInterval())
+                .noiseLevel((int) camera.getNoiseLevel())
+                .motionArea(camera.getMotionArea())
+                .detectionResolution((int) camera.getDetectionResolution())
+                .detectionMode(camera.getDetectionMode())
+                .minBlobArea(camera.getMinBlobArea())
+                .ignoreRegions(camera.getIgnoreRegions())
+                .motionEventWindow(camera.getMotionEventWindow())
+                .showMotionArea(true)
+                .vectorizedDiff(false)
+                .build();
+    }
+
+    private long longOption(String cameraName, Map<String, Object> options, String option, long fallback) {
+        Object value = options.get(option);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong(((String) value).trim());
+            } catch (NumberFormatException e) {
+                // logged below
+            }
+        }
+
+        logInvalidOption(cameraName, option, value, fallback);
+        return fallback;
+    }
+
+    private boolean booleanOption(String cameraName, Map<String, Object> options, String option, boolean fallback) {
+        Object value = options.get(option);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        String text = String.valueOf(value).trim();
+        if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")) {
+            return Boolean.parseBoolean(text);
+        }
+
+        logInvalidOption(cameraName, option, value, fallback);
+        return fallback;
+    }
+
+    private String stringOption(String cameraName, Map<String, Object> options, String option, String fallback) {
+        Object value = options.get(option);
+        if (value instanceof String) {
+            return (String) value;
+        }
+
+        logInvalidOption(cameraName, option, value, fallback);
+        return fallback;
+    }
+
+    private DetectionModeEnum detectionModeOption(String cameraName, Map<String, Object> options, DetectionModeEnum fallback) {
+        Object value = options.get(DETECTION_MODE);
+        if (value instanceof String) {
+            try {
+                return DetectionModeEnum.valueOf(((String) value).trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                // logged below
+            }
+        }
+
+        logInvalidOption(cameraName, DETECTION_MODE, value, fallback);
+        return fallback;
+    }
+
+    private void logInvalidOption(String cameraName, String option, Object value, Object fallback) {
+        log.error("Ignoring invalid option on Camera {}: {}={}, keeping {}", cameraName, option, value, fallback);
+    }
+
     private void syncCameras() {
         DatabaseReference cloudCamerasOptions = databaseProvider.getReference("/options/cameras");
 
@@ -265,4 +400,8 @@ public class OptionsService {
     public ConcurrentHashMap<String, Object> getCameraOptions(String cameraName) {
         return (ConcurrentHashMap<String, Object>) localCamerasOptions.get(cameraName);
     }
+
+    public CameraDetectionSettings getDetectionSettings(String cameraName) {
+        return detectionSettings.get(cameraName);
+    }
 }
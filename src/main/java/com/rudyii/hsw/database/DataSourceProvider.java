@@ -29,6 +29,8 @@ public class DataSourceProvider {
 
         //create tables
         connection.createStatement().execute("CREATE TABLE IF NOT EXISTS SETTINGS (KEY STRING NOT NULL UNIQUE, VALUE)");
+        connection.createStatement().execute("CREATE TABLE IF NOT EXISTS UPLOAD_QUEUE (ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "CAMERA_NAME STRING NOT NULL, FILE_PATH STRING NOT NULL UNIQUE, IMAGE_PATH STRING, ATTEMPTS INTEGER NOT NULL DEFAULT 0, CREATED INTEGER)");
 
         //cleanup deprecated tables
         connection.createStatement().execute("DROP TABLE IF EXISTS DROPBOX_FILES");
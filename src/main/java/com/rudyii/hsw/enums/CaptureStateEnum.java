@@ -0,0 +1,5 @@
+package com.rudyii.hsw.enums;
+
+public enum CaptureStateEnum {
+    IDLE, CAPTURING, UPLOADING, COOLDOWN
+}
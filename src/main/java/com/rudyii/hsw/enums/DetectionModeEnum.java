@@ -0,0 +1,5 @@
+package com.rudyii.hsw.enums;
+
+public enum DetectionModeEnum {
+    FRAME_DIFF, BACKGROUND_MODEL
+}
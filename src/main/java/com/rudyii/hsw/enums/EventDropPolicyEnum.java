@@ -0,0 +1,5 @@
+package com.rudyii.hsw.enums;
+
+public enum EventDropPolicyEnum {
+    KEEP, DROP_OLDEST, DROP_NEWEST
+}
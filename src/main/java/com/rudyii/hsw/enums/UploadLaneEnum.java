@@ -0,0 +1,5 @@
+package com.rudyii.hsw.enums;
+
+public enum UploadLaneEnum {
+    SNAPSHOT, VIDEO
+}
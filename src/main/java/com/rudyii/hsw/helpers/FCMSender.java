@@ -1,69 +1,165 @@
 package com.rudyii.hsw.helpers;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.internal.LinkedTreeMap;
 import com.rudyii.hsw.enums.FcmMessageEnum;
-import org.apache.http.client.HttpClient;
+import com.rudyii.hsw.objects.NotificationPayload;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.rudyii.hsw.enums.FcmMessageEnum.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+// One pooled keep-alive async client for all pushes, no thread waits on the HTTP exchange.
+// The pool size bounds how many requests are in flight at once, the rest wait for a connection inside the client
+@Slf4j
 @Component
 public class FCMSender {
     public static final String TYPE_TO = "to";  // Use for single devices, device groups and topics
     private static final String TYPE_CONDITION = "condition"; // Use for Conditions
-    private static final String URL_SEND = "https://fcm.googleapis.com/fcm/send";
+    private static final String TYPE_REGISTRATION_IDS = "registration_ids"; // Use for up to 1000 devices at once
+    private static final int MAX_REGISTRATION_IDS = 1000;
+    private static final Gson GSON = new Gson();
 
     @Value("${fcm.server.key}")
     private String fcmServerKey;
 
-    public FcmMessageEnum sendData(String recipientType, String recipientToken, JsonObject messageData) throws IOException {
+    @Value("${fcm.url:https://fcm.googleapis.com/fcm/send}")
+    private String fcmUrl;
+
+    @Value("${fcm.max.connections:4}")
+    private int maxConnections;
+
+    @Value("${fcm.timeout.ms:10000}")
+    private int timeout;
+
+    private CloseableHttpAsyncClient httpClient;
+
+    @PostConstruct
+    public void init() {
+        this.httpClient = HttpAsyncClients.custom()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(timeout)
+                        .setConnectionRequestTimeout(timeout)
+                        .setSocketTimeout(timeout)
+                        .build())
+                .build();
+        httpClient.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        httpClient.close();
+    }
+
+    public CompletableFuture<FcmMessageEnum> sendData(String recipientType, String recipientToken, JsonObject messageData) {
         return sendNotificationAndData(recipientType, recipientToken, null, messageData);
     }
 
-    private FcmMessageEnum sendNotificationAndData(String recipientType, String recipientToken, JsonObject notificationObject, JsonObject messageData) throws IOException {
-        FcmMessageEnum result = null;
+    // one request per batch of up to 1000 tokens, results are completed in the order of the tokens with one per token.
+    // A failed batch only fails its own tokens, so recipients of the batches that went out are not pushed again
+    public CompletableFuture<List<FcmMessageEnum>> sendData(List<String> recipientTokens, NotificationPayload payload) {
+        List<CompletableFuture<List<FcmMessageEnum>>> batches = new ArrayList<>();
+
+        for (int from = 0; from < recipientTokens.size(); from += MAX_REGISTRATION_IDS) {
+            JsonArray registrationIds = new JsonArray();
+            recipientTokens.subList(from, Math.min(from + MAX_REGISTRATION_IDS, recipientTokens.size())).forEach(registrationIds::add);
+            int batchSize = registrationIds.size();
+
+            byte[] body = withData("{\"" + TYPE_REGISTRATION_IDS + "\":" + registrationIds + ",\"data\":", payload.getData());
+            batches.add(sendFcmMessage(body)
+                    .thenApply(response -> processMulticastResults(response, batchSize))
+                    .exceptionally(error -> {
+                        log.warn("FCM batch of {} tokens failed", batchSize, error);
+                        return Collections.nCopies(batchSize, FAIL);
+                    }));
+        }
+
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<FcmMessageEnum> results = new ArrayList<>(recipientTokens.size());
+            batches.forEach(batch -> results.addAll(batch.join()));
+            return results;
+        });
+    }
+
+    private CompletableFuture<FcmMessageEnum> sendNotificationAndData(String recipientType, String recipientToken, JsonObject notificationObject, JsonObject messageData) {
         if (recipientType.equals(TYPE_TO) || recipientType.equals(TYPE_CONDITION)) {
             JsonObject recipientDetails = new JsonObject();
             recipientDetails.addProperty(recipientType, recipientToken);
-            result = sendFcmMessage(recipientDetails, notificationObject, messageData);
+            if (notificationObject != null) recipientDetails.add("notification", notificationObject);
+            if (messageData != null) recipientDetails.add("data", messageData);
+            return sendFcmMessage(recipientDetails.toString().getBytes(UTF_8)).thenApply(this::processResults);
         }
-        return result;
+        return CompletableFuture.completedFuture(null);
     }
 
-    private FcmMessageEnum sendFcmMessage(JsonObject recipientDetails, JsonObject notificationObject, JsonObject messageData) throws IOException {
-        HttpPost httpPost = new HttpPost(URL_SEND);
-        httpPost.setHeader("Content-Type", "application/json");
-        httpPost.setHeader("Authorization", "key=" + fcmServerKey);
-
-        if (notificationObject != null) recipientDetails.add("notification", notificationObject);
-        if (messageData != null) recipientDetails.add("data", messageData);
-
-        String data = recipientDetails.toString();
-
-        StringEntity entity = new StringEntity(data);
-        httpPost.setEntity(entity);
-
-        HttpClient httpClient = HttpClientBuilder.create().build();
-
-        BasicResponseHandler responseHandler = new BasicResponseHandler();
-        String response = httpClient.execute(httpPost, responseHandler);
+    // the rendered data is copied after the recipients part and closed, never parsed or re-serialized
+    private byte[] withData(String head, byte[] data) {
+        byte[] headBytes = head.getBytes(UTF_8);
+        byte[] body = Arrays.copyOf(headBytes, headBytes.length + data.length + 1);
+        System.arraycopy(data, 0, body, headBytes.length, data.length);
+        body[body.length - 1] = '}';
+        return body;
+    }
 
-        return processResults(response);
+    private CompletableFuture<String> sendFcmMessage(byte[] body) {
+        HttpPost httpPost = new HttpPost(fcmUrl);
+        httpPost.setHeader("Authorization", "key=" + fcmServerKey);
+        httpPost.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+
+        CompletableFuture<String> response = new CompletableFuture<>();
+        httpClient.execute(httpPost, new FutureCallback<HttpResponse>() {
+            public void completed(HttpResponse httpResponse) {
+                try {
+                    int status = httpResponse.getStatusLine().getStatusCode();
+                    if (status >= 300) {
+                        EntityUtils.consume(httpResponse.getEntity());
+                        response.completeExceptionally(new HttpResponseException(status, httpResponse.getStatusLine().getReasonPhrase()));
+                    } else {
+                        response.complete(EntityUtils.toString(httpResponse.getEntity()));
+                    }
+                } catch (IOException e) {
+                    response.completeExceptionally(e);
+                }
+            }
+
+            public void failed(Exception e) {
+                response.completeExceptionally(e);
+            }
+
+            public void cancelled() {
+                response.cancel(false);
+            }
+        });
+        return response;
     }
 
     private FcmMessageEnum processResults(String response) {
-        Gson gson = new Gson();
-        LinkedTreeMap<String, Object> result = gson.fromJson(response, LinkedTreeMap.class);
+        LinkedTreeMap<String, Object> result = GSON.fromJson(response, LinkedTreeMap.class);
         ArrayList<Object> detailedResult = (ArrayList<Object>) result.get("results");
         LinkedTreeMap<String, Object> results = (LinkedTreeMap<String, Object>) detailedResult.get(0);
 
@@ -75,4 +171,33 @@ public class FCMSender {
 
         return (Double) result.get("failure") == 0 ? SUCCESS : FAIL;
     }
+
+    // tokens the response has no result for are failed
+    private List<FcmMessageEnum> processMulticastResults(String response, int batchSize) {
+        LinkedTreeMap<String, Object> result = GSON.fromJson(response, LinkedTreeMap.class);
+        ArrayList<Object> detailedResult = (ArrayList<Object>) result.get("results");
+        if (detailedResult == null || detailedResult.size() != batchSize) {
+            log.warn("FCM answered {} results for a batch of {} tokens", detailedResult == null ? 0 : detailedResult.size(), batchSize);
+        }
+
+        List<FcmMessageEnum> results = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            if (detailedResult == null || i >= detailedResult.size()) {
+                results.add(FAIL);
+                continue;
+            }
+
+            String error = (String) ((LinkedTreeMap<String, Object>) detailedResult.get(i)).get("error");
+
+            if (error == null) {
+                results.add(SUCCESS);
+            } else if ("InvalidRegistration".equals(error)) {
+                results.add(WARNING);
+            } else {
+                results.add(FAIL);
+            }
+        }
+
+        return results;
+    }
 }
@@ -0,0 +1,62 @@
+package com.rudyii.hsw.motion;
+
+// Diffs against an exponentially weighted running average kept in 8.8 fixed point, so the previous frame is not used.
+// Background pixels adapt quickly while pixels currently seen as motion adapt slowly to avoid swallowing the object.
+public class BackgroundModelDiffEngine implements FrameDiffEngine {
+    private static final int BACKGROUND_LEARNING_SHIFT = 4;
+    private static final int FOREGROUND_LEARNING_SHIFT = 7;
+
+    private short[] background = new short[0];
+
+    @Override
+    public int diff(LumaFrame previous, LumaFrame current, int noiseLevel, RegionMask regionMask, MotionMask motionMask) {
+        byte[] currentLuma = current.getLuma();
+        long[] regionBits = regionMask.getBits();
+        int size = current.getSize();
+
+        if (background.length != size) {
+            initializeFrom(currentLuma, size);
+            return 0;
+        }
+
+        int diff = 0;
+        boolean prevPixelIsDifferent = false;
+        for (int word = 0; word < regionBits.length; word++) {
+            long watched = regionBits[word];
+            if (watched == 0) {
+                prevPixelIsDifferent = false;
+                continue;
+            }
+
+            int end = Math.min((word << 6) + 64, size);
+            for (int i = word << 6; i < end; i++) {
+                if ((watched & (1L << i)) == 0) {
+                    prevPixelIsDifferent = false;
+                    continue;
+                }
+
+                int model = background[i] & 0xFFFF;
+                int light = (currentLuma[i] & 0xFF) << 8;
+                boolean diffExists = Math.abs((model >>> 8) - (light >>> 8)) > noiseLevel;
+
+                if (diffExists && prevPixelIsDifferent) {
+                    motionMask.set(i);
+                    diff++;
+                }
+
+                background[i] = (short) (model + ((light - model) >> (diffExists ? FOREGROUND_LEARNING_SHIFT : BACKGROUND_LEARNING_SHIFT)));
+                prevPixelIsDifferent = diffExists;
+            }
+        }
+
+        return diff;
+    }
+
+    private void initializeFrom(byte[] luma, int size) {
+        this.background = new short[size];
+
+        for (int i = 0; i < size; i++) {
+            background[i] = (short) ((luma[i] & 0xFF) << 8);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.rudyii.hsw.motion;
+
+import com.rudyii.hsw.objects.MotionBlob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Single pass 8-connected labeling: only two rows of labels are kept and blob bounds are merged into the
+// union-find root as soon as two labels meet, so no second pass over the mask is needed
+public class BlobLabeler {
+    private int[] previousRow = new int[0];
+    private int[] currentRow = new int[0];
+    private int[] parent = new int[64];
+    private int[] minX = new int[64];
+    private int[] minY = new int[64];
+    private int[] maxX = new int[64];
+    private int[] maxY = new int[64];
+    private int[] area = new int[64];
+    private int labels;
+
+    public List<MotionBlob> label(MotionMask motionMask, int scale, long minBlobArea) {
+        int width = motionMask.getWidth();
+        int height = motionMask.getHeight();
+
+        if (currentRow.length != width) {
+            this.previousRow = new int[width];
+            this.currentRow = new int[width];
+        } else {
+            Arrays.fill(previousRow, 0);
+        }
+        this.labels = 0;
+
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * width;
+            for (int x = 0; x < width; x++) {
+                if (!motionMask.get(rowStart + x)) {
+                    currentRow[x] = 0;
+                    continue;
+                }
+
+                int label = 0;
+                if (x > 0) {
+                    label = join(label, currentRow[x - 1]);
+                    label = join(label, previousRow[x - 1]);
+                }
+                label = join(label, previousRow[x]);
+                if (x + 1 < width) {
+                    label = join(label, previousRow[x + 1]);
+                }
+
+                if (label == 0) {
+                    label = newLabel(x, y);
+                } else {
+                    include(label, x, y);
+                }
+                currentRow[x] = label;
+            }
+
+            int[] row = previousRow;
+            this.previousRow = currentRow;
+            this.currentRow = row;
+        }
+
+        List<MotionBlob> blobs = new ArrayList<>();
+        int pixelArea = scale * scale;
+        for (int label = 1; label <= labels; label++) {
+            if (parent[label] == label && (long) area[label] * pixelArea >= minBlobArea) {
+                blobs.add(MotionBlob.builder()
+                        .x(minX[label] * scale)
+                        .y(minY[label] * scale)
+                        .width((maxX[label] - minX[label] + 1) * scale)
+                        .height((maxY[label] - minY[label] + 1) * scale)
+                        .area(area[label] * pixelArea)
+                        .build());
+            }
+        }
+        blobs.sort(Comparator.comparingInt(MotionBlob::getArea).reversed());
+
+        return blobs;
+    }
+
+    private int join(int label, int neighbour) {
+        if (neighbour == 0) {
+            return label;
+        }
+
+        int root = find(neighbour);
+        if (label == 0 || label == root) {
+            return root;
+        }
+
+        parent[root] = label;
+        minX[label] = Math.min(minX[label], minX[root]);
+        minY[label] = Math.min(minY[label], minY[root]);
+        maxX[label] = Math.max(maxX[label], maxX[root]);
+        maxY[label] = Math.max(maxY[label], maxY[root]);
+        area[label] += area[root];
+
+        return label;
+    }
+
+    private int find(int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private int newLabel(int x, int y) {
+        int label = ++labels;
+
+        if (label == parent.length) {
+            int capacity = parent.length * 2;
+            this.parent = Arrays.copyOf(parent, capacity);
+            this.minX = Arrays.copyOf(minX, capacity);
+            this.minY = Arrays.copyOf(minY, capacity);
+            this.maxX = Arrays.copyOf(maxX, capacity);
+            this.maxY = Arrays.copyOf(maxY, capacity);
+            this.area = Arrays.copyOf(area, capacity);
+        }
+
+        parent[label] = label;
+        minX[label] = x;
+        maxX[label] = x;
+        minY[label] = y;
+        maxY[label] = y;
+        area[label] = 1;
+
+        return label;
+    }
+
+    private void include(int label, int x, int y) {
+        minX[label] = Math.min(minX[label], x);
+        maxX[label] = Math.max(maxX[label], x);
+        maxY[label] = Math.max(maxY[label], y);
+        area[label]++;
+    }
+}
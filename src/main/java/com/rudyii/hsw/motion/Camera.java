@@ -1,7 +1,13 @@
 package com.rudyii.hsw.motion;
 
 import com.google.common.net.MediaType;
+import com.rudyii.hsw.enums.CaptureStateEnum;
+import com.rudyii.hsw.enums.DetectionModeEnum;
+import com.rudyii.hsw.enums.FrameSourceEnum;
 import com.rudyii.hsw.enums.IPStateEnum;
+import com.rudyii.hsw.enums.RecorderModeEnum;
+import com.rudyii.hsw.objects.FrameHandle;
+import com.rudyii.hsw.objects.MotionBlob;
 import com.rudyii.hsw.objects.events.*;
 import com.rudyii.hsw.providers.StorageProvider;
 import com.rudyii.hsw.services.ArmedStateService;
@@ -10,22 +16,27 @@ import com.rudyii.hsw.services.PingService;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.SystemUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.file.Files;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.rudyii.hsw.configuration.OptionsService.CONTINUOUS_MONITORING;
+import static com.rudyii.hsw.configuration.OptionsService.CROP_TO_MOTION;
+import static com.rudyii.hsw.configuration.OptionsService.RECORD_INTERVAL;
 import static com.rudyii.hsw.configuration.OptionsService.USE_MOTION_OBJECT;
 import static com.rudyii.hsw.enums.ArmedStateEnum.ARMED;
 import static com.rudyii.hsw.enums.ArmedStateEnum.DISARMED;
@@ -37,9 +48,13 @@ public class Camera {
     private final StorageProvider storageProvider;
     private final EventService eventService;
     private final ArmedStateService armedStateService;
+    private final ThreadPoolTaskExecutor hswExecutor;
     private CameraMotionDetector currentCameraMotionDetector;
-    private File lock;
-    private boolean rebootInProgress, detectorEnabled, useMotionObject;
+    @Getter
+    private final CaptureStateMachine captureState = new CaptureStateMachine();
+    private final FramePool framePool = new FramePool();
+    private long recordInterval = 10L;
+    private boolean rebootInProgress, detectorEnabled, useMotionObject, cropToMotion;
     @Getter
     @Setter
     private String mjpegUrl, jpegUrl, rtspUrl, rebootUrl, cameraName;
@@ -57,6 +72,21 @@ public class Camera {
     private long motionArea = 20L;
     @Getter
     @Setter
+    private long detectionResolution = 0L;
+    @Getter
+    @Setter
+    private long minBlobArea = 0L;
+    @Getter
+    @Setter
+    private String ignoreRegions = "";
+    @Getter
+    @Setter
+    private long motionEventWindow = 0L;
+    @Getter
+    @Setter
+    private DetectionModeEnum detectionMode = DetectionModeEnum.FRAME_DIFF;
+    @Getter
+    @Setter
     private boolean healthCheckEnabled;
     @Getter
     @Setter
@@ -91,29 +121,77 @@ public class Camera {
     @Getter
     @Setter
     private String rebootUrlTemplate;
+    @Getter
+    @Setter
+    private FrameSourceEnum frameSource = FrameSourceEnum.SNAPSHOT;
+    @Getter
+    @Setter
+    private long preRollBufferSize = 0L;
+    @Getter
+    private PreRollBuffer preRollBuffer;
+    @Getter
+    @Setter
+    private RecorderModeEnum recorderMode = RecorderModeEnum.ON_DEMAND;
+    @Getter
+    @Setter
+    private long segmentDuration = 2L;
+    @Getter
+    @Setter
+    private String segmentSpool = "";
+    @Getter
+    @Setter
+    private long captureCooldown = 0L;
+    @Getter
+    private SegmentedRecorder segmentedRecorder;
 
     @Autowired
     public Camera(ApplicationContext context, PingService pingService,
                   StorageProvider storageProvider, EventService eventService,
-                  ArmedStateService armedStateService) {
+                  ArmedStateService armedStateService, ThreadPoolTaskExecutor hswExecutor) {
         this.context = context;
         this.pingService = pingService;
         this.storageProvider = storageProvider;
         this.eventService = eventService;
         this.armedStateService = armedStateService;
+        this.hswExecutor = hswExecutor;
     }
 
     @PostConstruct
     public void init() throws Exception {
-        this.lock = new File(getCameraName() + ".lock");
-
         buildUrls();
 
+        // only bin/capture_motion.sh prepends the pre-roll, segments already cover the time before the motion
+        if (preRollBufferSize > 0 && SystemUtils.IS_OS_WINDOWS) {
+            log.warn("Pre-roll is not supported by bin/capture_motion.bat, ignoring preRollBufferSize on camera {}", getCameraName());
+        } else if (preRollBufferSize > 0 && recorderMode == RecorderModeEnum.SEGMENTED) {
+            log.warn("Pre-roll is not used by the SEGMENTED recorder, ignoring preRollBufferSize on camera {}", getCameraName());
+        } else if (preRollBufferSize > 0) {
+            this.preRollBuffer = new PreRollBuffer((int) (preRollBufferSize * 1024 * 1024));
+        }
+
+        if (recorderMode == RecorderModeEnum.SEGMENTED) {
+            if (SystemUtils.IS_OS_WINDOWS) {
+                throw new IllegalStateException("recorderMode SEGMENTED needs bin/record_segments.sh and is not supported on Windows, "
+                        + "set recorderMode to ON_DEMAND on camera " + getCameraName());
+            }
+
+            File spool = segmentSpool.isEmpty() ? new File(System.getProperty("java.io.tmpdir") + "/segments/" + getCameraName())
+                    : new File(segmentSpool);
+            this.segmentedRecorder = new SegmentedRecorder(getCameraName(), getRtspUrl(), segmentDuration, spool);
+        }
+
         if (isAutostartMonitoring() || isContinuousMonitoring()) {
             enableMotionDetection();
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        if (segmentedRecorder != null) {
+            segmentedRecorder.stop();
+        }
+    }
+
     private void buildUrls() {
         this.jpegUrl = buildUrlFromTemplate(jpegUrlTemplate);
         this.mjpegUrl = buildUrlFromTemplate(mjpegUrlTemplate);
@@ -130,6 +208,10 @@ public class Camera {
 
             currentCameraMotionDetector.on(this).start();
 
+            if (segmentedRecorder != null) {
+                segmentedRecorder.start();
+            }
+
             log.info("Motion detector enabled for camera: {}", getCameraName());
         } else {
             log.error("Failed to start motion detection on camera {} due to OFFLINE", getCameraName());
@@ -150,7 +232,11 @@ public class Camera {
             this.currentCameraMotionDetector = null;
         }
 
-        Files.delete(lock.toPath());
+        if (segmentedRecorder != null) {
+            segmentedRecorder.stop();
+        }
+
+        captureState.reset();
 
         log.info("Motion detector disabled for camera: {}", getCameraName());
     }
@@ -196,8 +282,7 @@ public class Camera {
                 .replace("${password}", getPassword());
     }
 
-    @Async
-    @EventListener({ArmedEvent.class, MotionDetectedEvent.class, OptionsChangedEvent.class})
+    @EventListener({ArmedEvent.class, MotionDetectedEvent.class, UploadEvent.class, OptionsChangedEvent.class})
     public void onEvent(EventBase event) throws Exception {
         if (event instanceof ArmedEvent) {
             ArmedEvent armedEvent = (ArmedEvent) event;
@@ -216,36 +301,36 @@ public class Camera {
                 return;
             }
 
-            if (lock.exists()) {
-                log.info("New motion detected on camera: {} but previous capture is in progress, ignoring...", getCameraName());
+            if (!captureState.onMotion(System.currentTimeMillis(), recordInterval * 1000)) {
+                if (captureState.getState() == CaptureStateEnum.CAPTURING) {
+                    log.info("New motion detected on camera: {} while capture is in progress, extending capture", getCameraName());
+                } else {
+                    log.info("New motion detected on camera: {} during cooldown, ignoring...", getCameraName());
+                }
             } else {
                 log.info("New motion detected at: {} on Camera {}", new Date(), getCameraName());
                 try {
-                    BufferedImage bufferedImage;
-                    if (useMotionObject) {
-                        bufferedImage = motionDetectedEvent.getMotionObject();
-                    } else {
-                        bufferedImage = motionDetectedEvent.getCurrentImage();
-                    }
-
-                    eventService.publish(MotionToNotifyEvent.builder()
-                            .cameraName(getCameraName())
-                            .currentImage(motionDetectedEvent.getCurrentImage())
-                            .motionObject(motionDetectedEvent.getMotionObject())
-                            .motionArea(motionDetectedEvent.getMotionArea())
-                            .eventId(motionDetectedEvent.getEventId())
-                            .snapshotUrl(uploadMotionImageFrom(motionDetectedEvent.getEventId(), bufferedImage))
-                            .build());
-
-                    lock.createNewFile();
                     context.getBean(VideoCaptor.class).startCaptureFrom(this);
                 } catch (Exception e) {
-                    log.error("Failed to lock {}", lock.getAbsolutePath(), e);
+                    captureState.captureFailed();
+                    log.error("Failed to start capture on camera {}", getCameraName(), e);
+                    return;
                 }
+
+                notifyMotion(motionDetectedEvent);
+            }
+        } else if (event instanceof UploadEvent) {
+            UploadEvent uploadEvent = (UploadEvent) event;
+            if (getCameraName().equals(uploadEvent.getCameraName())) {
+                captureState.uploadFinished(uploadEvent.getFileName(), System.currentTimeMillis(), captureCooldown * 1000);
             }
         } else if (event instanceof OptionsChangedEvent) {
-            ConcurrentHashMap<String, Object> cameraOptions = ((OptionsChangedEvent) event).getCameraOptions(getCameraName());
+            OptionsChangedEvent optionsChangedEvent = (OptionsChangedEvent) event;
+            this.recordInterval = (Long) optionsChangedEvent.getOption(RECORD_INTERVAL);
+
+            ConcurrentHashMap<String, Object> cameraOptions = optionsChangedEvent.getCameraOptions(getCameraName());
             this.useMotionObject = (Boolean) cameraOptions.get(USE_MOTION_OBJECT);
+            this.cropToMotion = (Boolean) cameraOptions.get(CROP_TO_MOTION);
 
             this.continuousMonitoring = (Boolean) cameraOptions.get(CONTINUOUS_MONITORING);
             if (!detectorEnabled && continuousMonitoring) {
@@ -256,10 +341,86 @@ public class Camera {
         }
     }
 
-    private URL uploadMotionImageFrom(long eventId, BufferedImage bufferedImage) {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            ImageIO.write(bufferedImage, "JPG", bos);
-            byte[] imageBytes = bos.toByteArray();
+    // the snapshot upload runs on the shared executor, this camera's listener thread only drives the capture state.
+    // The task holds its own frame reference, handed over to the MotionToNotifyEvent
+    private void notifyMotion(MotionDetectedEvent event) {
+        FrameHandle frame = event.getCurrentFrame().retain();
+        try {
+            hswExecutor.execute(() -> {
+                URL snapshotUrl;
+                try {
+                    snapshotUrl = uploadMotionImageFrom(event.getEventId(), snapshotOf(event));
+                } catch (Exception e) {
+                    log.error("Failed to render motion snapshot on camera {}", getCameraName(), e);
+                    snapshotUrl = null;
+                }
+
+                eventService.publish(MotionToNotifyEvent.builder()
+                        .cameraName(getCameraName())
+                        .currentFrame(frame)
+                        .motionArea(event.getMotionArea())
+                        .eventId(event.getEventId())
+                        .snapshotUrl(snapshotUrl)
+                        .build());
+            });
+        } catch (RuntimeException e) {
+            frame.release();
+            log.error("Failed to hand off motion notification on camera {}", getCameraName(), e);
+        }
+    }
+
+    // the JPEG is uploaded as the camera served it, only the motion object or a crop to the motion area
+    // need a decode and encode, and only for the detections that actually reach the camera
+    private byte[] snapshotOf(MotionDetectedEvent event) throws IOException {
+        FrameHandle frame = event.getCurrentFrame();
+        if (!useMotionObject && !cropToMotion) {
+            return frame.getBytes();
+        }
+
+        BufferedImage image = frame.decode();
+        BufferedImage motionObject = useMotionObject ? event.getMotionMask().render(image, event.getScale(), framePool) : null;
+        try {
+            BufferedImage snapshot = motionObject != null ? motionObject : image;
+            if (cropToMotion) {
+                snapshot = cropToBlobs(snapshot, event.getBlobs());
+            }
+            if (snapshot == image) {
+                return frame.getBytes();
+            }
+
+            try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+                ImageIO.write(snapshot, "JPG", bos);
+                return bos.toByteArray();
+            }
+        } finally {
+            framePool.recycle(motionObject);
+        }
+    }
+
+    private BufferedImage cropToBlobs(BufferedImage image, List<MotionBlob> blobs) {
+        if (blobs == null || blobs.isEmpty()) {
+            return image;
+        }
+
+        int minX = image.getWidth(), minY = image.getHeight(), maxX = 0, maxY = 0;
+        for (MotionBlob blob : blobs) {
+            minX = Math.min(minX, blob.getX());
+            minY = Math.min(minY, blob.getY());
+            maxX = Math.max(maxX, blob.getX() + blob.getWidth());
+            maxY = Math.max(maxY, blob.getY() + blob.getHeight());
+        }
+
+        maxX = Math.min(maxX, image.getWidth());
+        maxY = Math.min(maxY, image.getHeight());
+        if (minX >= maxX || minY >= maxY) {
+            return image;
+        }
+
+        return image.getSubimage(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    private URL uploadMotionImageFrom(long eventId, byte[] imageBytes) {
+        try {
             return storageProvider.putData(eventId + ".jpg", MediaType.JPEG, imageBytes);
         } catch (Exception e) {
             log.error("Failed to upload Image", e);
@@ -276,7 +437,7 @@ public class Camera {
     }
 
     public boolean isRecordingInProgress() {
-        return lock.exists();
+        return captureState.getState() == CaptureStateEnum.CAPTURING;
     }
 
     public boolean isRebootInProgress() {
@@ -1,6 +1,8 @@
 package com.rudyii.hsw.motion;
 
 import com.rudyii.hsw.configuration.OptionsService;
+import com.rudyii.hsw.objects.CameraDetectionSettings;
+import com.rudyii.hsw.objects.MotionBlob;
 import com.rudyii.hsw.objects.events.CameraRebootEvent;
 import com.rudyii.hsw.objects.events.MotionDetectedEvent;
 import com.rudyii.hsw.services.ArmedStateService;
@@ -9,124 +11,223 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Scope;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
-import static com.rudyii.hsw.configuration.OptionsService.SHOW_MOTION_AREA;
+import static com.rudyii.hsw.enums.DetectionModeEnum.BACKGROUND_MODEL;
+import static com.rudyii.hsw.enums.FrameSourceEnum.MJPEG;
 
 @Slf4j
 @Component
 @Scope(value = "prototype")
 public class CameraMotionDetector {
+    private static final long MIN_SNAPSHOT_TIMEOUT = 1000L;
+
     private final OptionsService optionsService;
     private final ArmedStateService armedStateService;
+    private final DetectionScheduler detectionScheduler;
+    private final FrameHandleFactory frameHandleFactory;
+    private final FrameDecoderFactory frameDecoderFactory;
 
     private final EventService eventService;
-    private BufferedImage previousImage, currentImage, motionObject;
-    private URL sourceUrl;
+    private final MotionMask motionMask = new MotionMask();
+    private final RegionMask regionMask = new RegionMask();
+    private final BlobLabeler blobLabeler = new BlobLabeler();
+    private final FramePool framePool = new FramePool();
+    private final Object decoderLock = new Object();
+    private final FrameDiffEngine frameDiffEngine = new ScalarFrameDiffEngine();
+    private final FrameDiffEngine vectorizedEngine = new SwarFrameDiffEngine();
+    private final FrameDiffEngine backgroundModelEngine = new BackgroundModelDiffEngine();
+    private LumaFrame previousFrame = new LumaFrame();
+    private LumaFrame currentFrame = new LumaFrame();
+    private FrameSource frameSource;
+    private FrameDecoder frameDecoder;
+    private MotionEventCoalescer motionEventCoalescer;
     private String cameraName;
-    private boolean enabled = false;
+    private volatile boolean enabled = false;
+    private volatile ScheduledFuture<?> nextTick;
+    private boolean primed = false;
     private boolean eventFired = false;
 
     @Lazy
     @Autowired
     public CameraMotionDetector(EventService eventService, OptionsService optionsService,
-                                ArmedStateService armedStateService) {
+                                ArmedStateService armedStateService, DetectionScheduler detectionScheduler,
+                                FrameHandleFactory frameHandleFactory, FrameDecoderFactory frameDecoderFactory) {
         this.eventService = eventService;
         this.optionsService = optionsService;
         this.armedStateService = armedStateService;
+        this.detectionScheduler = detectionScheduler;
+        this.frameHandleFactory = frameHandleFactory;
+        this.frameDecoderFactory = frameDecoderFactory;
     }
 
-    @Async
-    public void start() throws Exception {
+    public void start() {
         this.enabled = true;
+        this.primed = false;
         log.info("Started CameraMotionDetector on Camera {}", cameraName);
 
-        try {
-            this.previousImage = ImageIO.read(sourceUrl);
-        } catch (Exception e) {
-            log.error("Failed to get previous image from Camera: {}", cameraName);
-        }
-        try {
-            this.currentImage = ImageIO.read(sourceUrl);
-        } catch (Exception e) {
-            log.error("Failed to get current image from camera: {}", cameraName);
-        }
-
-        startDetection();
+        scheduleTick(System.currentTimeMillis());
     }
 
-    @Async
     public void stop() {
         this.enabled = false;
         log.info("Stopping CameraMotionDetector on {}", cameraName);
+
+        ScheduledFuture<?> tick = nextTick;
+        if (tick != null) {
+            tick.cancel(false);
+        }
+        motionEventCoalescer.cancel();
+        closeFrameSource();
+        closeFrameDecoder();
+    }
+
+    private void scheduleTick(long timeMillis) {
+        this.nextTick = detectionScheduler.scheduleAt(this::tick, timeMillis);
     }
 
-    private void startDetection() throws InterruptedException {
-        while (this.enabled && armedStateService.isArmed()) {
-            this.previousImage = currentImage;
+    private void tick() {
+        long tickStarted = System.currentTimeMillis();
+
+        if (!enabled || !armedStateService.isArmed()) {
+            closeFrameSource();
+            return;
+        }
+
+        CameraDetectionSettings settings = optionsService.getDetectionSettings(cameraName);
+        if (primed) {
             try {
-                this.motionObject = new BufferedImage(previousImage.getWidth(), previousImage.getHeight(), previousImage.getType());
-                this.currentImage = ImageIO.read(sourceUrl);
-                detect();
+                detect(frameSource.read(), settings);
             } catch (Exception e) {
+                if (!enabled) return;
                 log.error("Failed to get current image from camera: {}", cameraName);
                 fireRebootEvent();
             }
-            Thread.sleep(interval());
+        } else {
+            try {
+                load(previousFrame, frameSource.read(), settings.getDetectionResolution());
+                this.primed = true;
+            } catch (Exception e) {
+                log.error("Failed to get previous image from Camera: {}", cameraName);
+            }
+        }
+
+        if (enabled) {
+            scheduleTick(tickStarted + settings.getInterval());
         }
     }
 
-    private void detect() {
-        int previousImageWidth = previousImage.getWidth(null);
-        int currentImageWidth = currentImage.getWidth(null);
-        int previousImageHeight = previousImage.getHeight(null);
-        int currentImageHeight = currentImage.getHeight(null);
+    private void closeFrameSource() {
+        try {
+            frameSource.close();
+        } catch (IOException e) {
+            log.warn("Failed to close frame source on Camera {}", cameraName, e);
+        }
+    }
 
-        if ((previousImageWidth != currentImageWidth) || (previousImageHeight != currentImageHeight)) {
-            log.error("Images dimensions mismatch: previous image size = {}x{} while current image is {}x{} on Camera {}",
-                    previousImageWidth, previousImageHeight, currentImageWidth, previousImageHeight, cameraName);
-            return;
+    // a tick may still be decoding when the detector stops, the lock keeps the native decoder alive until it is done
+    private void closeFrameDecoder() {
+        synchronized (decoderLock) {
+            if (frameDecoder != null) {
+                frameDecoder.close();
+                this.frameDecoder = null;
+            }
         }
+    }
 
-        int diff = 0;
-        boolean prevPixelIsDifferent = false;
-        for (int y = 0; y < previousImageHeight; y++) {
-            for (int x = 0; x < previousImageWidth; x++) {
-                int rgbCurr = currentImage.getRGB(x, y);
-                int lightPrev = previousImage.getRGB(x, y) & 0xFF;
-                int lightCurr = currentImage.getRGB(x, y) & 0xFF;
+    // full resolution detection samples the decoded colour frame as it always did, reduced resolution detection
+    // decodes a downscaled luma plane only
+    private void load(LumaFrame target, byte[] jpeg, int detectionResolution) throws IOException {
+        synchronized (decoderLock) {
+            if (frameDecoder == null) {
+                throw new IOException("Frame decoder is closed");
+            }
+            if (detectionResolution > 0) {
+                frameDecoder.decodeLuma(jpeg, 0, jpeg.length, detectionResolution, target, framePool);
+                return;
+            }
 
+            BufferedImage image = frameDecoder.decode(jpeg, 0, jpeg.length, framePool);
+            try {
+                target.load(image, 0);
+            } finally {
+                framePool.recycle(image);
+            }
+        }
+    }
 
-                boolean diffExists = Math.abs(lightPrev - lightCurr) > noiseLevel();
+    void detect(byte[] jpeg, CameraDetectionSettings settings) throws IOException {
+        load(currentFrame, jpeg, settings.getDetectionResolution());
 
-                if (diffExists && prevPixelIsDifferent) {
-                    motionObject.setRGB(x, y, rgbCurr);
-                    diff++;
-                }
+        if (!previousFrame.sameSizeAs(currentFrame)) {
+            log.error("Images dimensions mismatch: previous image size = {}x{} while current image is {}x{} on Camera {}",
+                    previousFrame.getWidth(), previousFrame.getHeight(), currentFrame.getWidth(), currentFrame.getHeight(), cameraName);
+            swapFrames();
+            return;
+        }
 
-                prevPixelIsDifferent = diffExists;
-            }
+        int noiseLevel = settings.getNoiseLevel();
+        int scale = currentFrame.getScale();
+        regionMask.compile(settings.getIgnoreRegions(), currentFrame.getWidth(), currentFrame.getHeight(), scale);
+        if (regionMask.getActiveCount() == 0) {
+            swapFrames();
+            return;
         }
 
-        int imageSize = previousImageWidth * previousImageHeight;
-        int differenceInPercentage = (100 * diff) / imageSize;
+        motionMask.reset(currentFrame.getWidth(), currentFrame.getHeight());
+        int diff = diffEngineFor(settings).diff(previousFrame, currentFrame, noiseLevel, regionMask, motionMask);
+        int frameSize = regionMask.getActiveCount();
+        swapFrames();
+
+        long minBlobArea = settings.getMinBlobArea();
+        List<MotionBlob> blobs = null;
+        if (minBlobArea > 0) {
+            blobs = blobLabeler.label(motionMask, scale, minBlobArea);
+            diff = blobs.stream().mapToInt(MotionBlob::getArea).sum() / (scale * scale);
+        }
+        int differenceInPercentage = (100 * diff) / frameSize;
 
-        if (showMotionArea()) {
-            System.out.println(cameraName + " noise level: " + noiseLevel() + " and motion area size: " + differenceInPercentage + "%");
+        if (settings.isShowMotionArea()) {
+            System.out.println(cameraName + " noise level: " + noiseLevel + " and motion area size: " + differenceInPercentage + "%");
         }
 
-        if (differenceInPercentage > motionAreaSize()) {
+        if (differenceInPercentage > settings.getMotionArea()) {
             log.info("Motion detected on Camera {} with motion area size : {}%", cameraName, differenceInPercentage);
-            eventService.publish(new MotionDetectedEvent(cameraName, differenceInPercentage, currentImage, motionObject));
+
+            // the current frame keeps the camera's own JPEG, the motion object is only rendered by the Camera
+            // that ends up using it, from a copy of the mask
+            motionEventCoalescer.submit(MotionDetectedEvent.builder()
+                    .cameraName(cameraName)
+                    .motionArea(differenceInPercentage)
+                    .currentFrame(frameHandleFactory.wrap(cameraName, jpeg))
+                    .motionMask(motionMask.copy())
+                    .scale(scale)
+                    .blobs(blobs == null ? blobLabeler.label(motionMask, scale, 0) : blobs)
+                    .detections(1)
+                    .build(), settings.getMotionEventWindow());
         }
     }
 
+    private FrameDiffEngine diffEngineFor(CameraDetectionSettings settings) {
+        if (settings.getDetectionMode() == BACKGROUND_MODEL) {
+            return backgroundModelEngine;
+        }
+        return settings.isVectorizedDiff() ? vectorizedEngine : frameDiffEngine;
+    }
+
+    private void swapFrames() {
+        LumaFrame previous = previousFrame;
+        this.previousFrame = currentFrame;
+        this.currentFrame = previous;
+    }
+
     private void fireRebootEvent() {
         if (!eventFired) {
             log.error("Firing reboot event for Camera {}", cameraName);
@@ -135,26 +236,17 @@ public class CameraMotionDetector {
         }
     }
 
-    private boolean showMotionArea() {
-        return (boolean) optionsService.getOption(SHOW_MOTION_AREA);
-    }
-
-    private long motionAreaSize() {
-        return ((long) optionsService.getCameraOptions(cameraName).get("motionArea"));
-    }
-
-    private long interval() {
-        return (long) optionsService.getCameraOptions(cameraName).get("interval");
-    }
-
-    private long noiseLevel() {
-        return (long) optionsService.getCameraOptions(cameraName).get("noiseLevel");
-    }
-
-
     public CameraMotionDetector on(Camera camera) throws MalformedURLException {
         this.cameraName = camera.getCameraName();
-        this.sourceUrl = new URL(camera.getJpegUrl());
+        this.motionEventCoalescer = new MotionEventCoalescer(cameraName, eventService, detectionScheduler);
+        this.frameDecoder = frameDecoderFactory.newDecoder();
+        if (camera.getFrameSource() == MJPEG) {
+            this.frameSource = new MjpegFrameSource(cameraName, new URL(camera.getMjpegUrl()), camera.getPreRollBuffer());
+        } else {
+            long interval = optionsService.getDetectionSettings(cameraName).getInterval();
+            this.frameSource = new SnapshotFrameSource(new URL(camera.getJpegUrl()), camera.getPreRollBuffer(),
+                    (int) Math.max(MIN_SNAPSHOT_TIMEOUT, interval));
+        }
 
         return this;
     }
@@ -0,0 +1,114 @@
+package com.rudyii.hsw.motion;
+
+import com.rudyii.hsw.enums.CaptureStateEnum;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.rudyii.hsw.enums.CaptureStateEnum.*;
+
+// State and its deadline are swapped together with a single CAS: the capture deadline while CAPTURING,
+// the end of the quiet period while COOLDOWN. UPLOADING remembers the clip it waits for, uploads of older queued clips
+// do not end it. A finished upload does not hold the camera, new motion starts a new capture
+public class CaptureStateMachine {
+    private static final long MIN_EXTENSION = 1000L;
+
+    private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(IDLE, 0, null));
+
+    // returns true when a new capture has to be started, motion during a capture only pushes its deadline
+    public boolean onMotion(long now, long captureMillis) {
+        while (true) {
+            Phase current = phase.get();
+            Phase next;
+
+            switch (current.state) {
+                case CAPTURING:
+                    next = new Phase(CAPTURING, Math.max(current.until, now + captureMillis), null);
+                    if (phase.compareAndSet(current, next)) {
+                        return false;
+                    }
+                    continue;
+                case COOLDOWN:
+                    if (now < current.until) {
+                        return false;
+                    }
+                default:
+                    next = new Phase(CAPTURING, now + captureMillis, null);
+                    if (phase.compareAndSet(current, next)) {
+                        return true;
+                    }
+            }
+        }
+    }
+
+    // returns milliseconds the capture was extended by, or 0 once the capture is over and the state moved to UPLOADING
+    // waiting for the upload of clip
+    public long finishOrExtend(long now, String clip) {
+        while (true) {
+            Phase current = phase.get();
+            if (current.state != CAPTURING) {
+                return 0;
+            }
+
+            long remaining = current.until - now;
+            if (remaining > MIN_EXTENSION) {
+                return remaining;
+            }
+
+            if (phase.compareAndSet(current, new Phase(UPLOADING, 0, clip))) {
+                return 0;
+            }
+        }
+    }
+
+    // also covers a capture that finished but produced nothing to upload, motion extending the capture meanwhile
+    // only makes the CAS retry
+    public void captureFailed() {
+        while (true) {
+            Phase current = phase.get();
+            if (current.state != CAPTURING && current.state != UPLOADING) {
+                return;
+            }
+            if (phase.compareAndSet(current, new Phase(IDLE, 0, null))) {
+                return;
+            }
+        }
+    }
+
+    public void uploadFinished(String clip, long now, long cooldownMillis) {
+        Phase next = cooldownMillis > 0 ? new Phase(COOLDOWN, now + cooldownMillis, null) : new Phase(IDLE, 0, null);
+        while (true) {
+            Phase current = phase.get();
+            if (current.state != UPLOADING || !Objects.equals(current.clip, clip)) {
+                return;
+            }
+            if (phase.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public void reset() {
+        phase.set(new Phase(IDLE, 0, null));
+    }
+
+    public CaptureStateEnum getState() {
+        Phase current = phase.get();
+        if (current.state == COOLDOWN && System.currentTimeMillis() >= current.until) {
+            return IDLE;
+        }
+        return current.state;
+    }
+
+    private static final class Phase {
+        private final CaptureStateEnum state;
+        private final long until;
+        private final String clip;
+
+        private Phase(CaptureStateEnum state, long until, String clip) {
+            this.state = state;
+            this.until = until;
+            this.clip = clip;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.rudyii.hsw.motion;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+
+// A few threads shared by every camera. Frame reads time out, snapshots after the camera's interval (a second at least)
+// and MJPEG frames after 5 seconds, so a hung camera only holds a thread and delays the other cameras for that long
+@Slf4j
+@Component
+public class DetectionScheduler {
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+
+    @Value("#{hswProperties['detection.pool.size'] ?: 2}")
+    private int poolSize;
+
+    @PostConstruct
+    public void init() {
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("detection-");
+        scheduler.setErrorHandler(throwable -> log.error("Motion detection tick failed", throwable));
+        scheduler.initialize();
+
+        log.info("Motion detection scheduler started with {} threads", poolSize);
+    }
+
+    public ScheduledFuture<?> scheduleAt(Runnable tick, long timeMillis) {
+        return scheduler.schedule(tick, new Date(timeMillis));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
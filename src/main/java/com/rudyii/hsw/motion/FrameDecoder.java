@@ -0,0 +1,29 @@
+package com.rudyii.hsw.motion;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+// Decodes camera JPEGs into images taken from the camera's FramePool. Not thread safe, every camera owns its decoder
+// and closes it when it stops, a decoder may hold native memory
+public interface FrameDecoder extends Closeable {
+    BufferedImage decode(byte[] data, int offset, int length, FramePool framePool) throws IOException;
+
+    // decodes the luma plane only, downscaled on decode by the largest 1/2, 1/4 or 1/8 step that stays within detectionWidth
+    void decodeLuma(byte[] data, int offset, int length, int detectionWidth, LumaFrame target, FramePool framePool) throws IOException;
+
+    @Override
+    void close();
+
+    static int decodeScale(int width, int detectionWidth) {
+        int scale = 1;
+        while (detectionWidth > 0 && scale < 8 && width / (scale * 2) >= detectionWidth) {
+            scale *= 2;
+        }
+        return scale;
+    }
+
+    static int scaled(int dimension, int scale) {
+        return (dimension + scale - 1) / scale;
+    }
+}
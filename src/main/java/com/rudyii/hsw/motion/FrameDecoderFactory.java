@@ -0,0 +1,23 @@
+package com.rudyii.hsw.motion;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// frame.decoder = auto uses libjpeg-turbo whenever its binding is on the classpath, imageio forces the JDK reader
+@Slf4j
+@Component
+public class FrameDecoderFactory {
+    @Value("#{hswProperties['frame.decoder'] ?: 'auto'}")
+    private String decoder;
+
+    public FrameDecoder newDecoder() {
+        if (!"imageio".equalsIgnoreCase(decoder) && TurboJpegFrameDecoder.isAvailable()) {
+            return new TurboJpegFrameDecoder();
+        }
+        if ("turbojpeg".equalsIgnoreCase(decoder)) {
+            log.warn("frame.decoder is set to turbojpeg but libjpeg-turbo is not available, decoding with ImageIO");
+        }
+        return new ImageIoFrameDecoder();
+    }
+}
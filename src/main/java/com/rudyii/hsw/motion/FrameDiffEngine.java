@@ -0,0 +1,5 @@
+package com.rudyii.hsw.motion;
+
+public interface FrameDiffEngine {
+    int diff(LumaFrame previous, LumaFrame current, int noiseLevel, RegionMask regionMask, MotionMask motionMask);
+}
@@ -0,0 +1,42 @@
+package com.rudyii.hsw.motion;
+
+import com.rudyii.hsw.objects.FrameHandle;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Creates frame handles and reports the JPEG bytes still referenced per camera as hsw.frames.retained.bytes
+@Component
+public class FrameHandleFactory {
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicLong> retainedBytes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FrameHandleFactory(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public FrameHandle wrap(String cameraName, byte[] jpeg) {
+        return new FrameHandle(jpeg, retainedBy(cameraName));
+    }
+
+    // keeps the snapshot as served by the camera, it is never decoded here
+    public FrameHandle read(String cameraName, URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            return wrap(cameraName, in.readAllBytes());
+        }
+    }
+
+    private AtomicLong retainedBy(String cameraName) {
+        return retainedBytes.computeIfAbsent(cameraName,
+                name -> meterRegistry.gauge("hsw.frames.retained.bytes", Tags.of("camera", name), new AtomicLong()));
+    }
+}
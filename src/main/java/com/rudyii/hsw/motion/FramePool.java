@@ -0,0 +1,50 @@
+package com.rudyii.hsw.motion;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import static java.awt.image.BufferedImage.TYPE_CUSTOM;
+
+// Per camera images reused across ticks: the FrameDecoder decodes JPEGs straight into a recycled image of the same
+// size and type, and motion objects are rendered into one. A tick holds at most one decoded frame
+public class FramePool {
+    private static final int MAX_POOLED = 3;
+
+    private final Deque<BufferedImage> free = new ArrayDeque<>();
+
+    public synchronized BufferedImage acquire(int width, int height, int type) {
+        Iterator<BufferedImage> images = free.iterator();
+        while (images.hasNext()) {
+            BufferedImage image = images.next();
+            if (image.getWidth() == width && image.getHeight() == height && image.getType() == type) {
+                images.remove();
+                return image;
+            }
+        }
+        return new BufferedImage(width, height, type);
+    }
+
+    // same as a new BufferedImage, every pixel is black
+    public BufferedImage acquireBlank(int width, int height, int type) {
+        BufferedImage image = acquire(width, height, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    public synchronized void recycle(BufferedImage image) {
+        if (image == null || image.getType() == TYPE_CUSTOM) {
+            return;
+        }
+        if (free.size() == MAX_POOLED) {
+            free.removeLast();
+        }
+        free.addFirst(image);
+    }
+}
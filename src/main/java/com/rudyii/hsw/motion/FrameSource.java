@@ -0,0 +1,9 @@
+package com.rudyii.hsw.motion;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Frames are returned as the camera's own JPEG bytes, decoding is left to the detector's FrameDecoder
+public interface FrameSource extends Closeable {
+    byte[] read() throws IOException;
+}
@@ -0,0 +1,87 @@
+package com.rudyii.hsw.motion;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import static com.rudyii.hsw.motion.FrameDecoder.decodeScale;
+import static com.rudyii.hsw.motion.FrameDecoder.scaled;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_CUSTOM;
+
+// Fallback decoder on the JDK JPEG reader. Luma frames are read as grayscale, which skips the colour conversion,
+// and subsampled while reading, the reader has no DCT scaling so every block is still fully decoded
+public class ImageIoFrameDecoder implements FrameDecoder {
+    private final ImageReader reader = ImageIO.getImageReadersByFormatName("jpeg").next();
+
+    @Override
+    public BufferedImage decode(byte[] data, int offset, int length, FramePool framePool) throws IOException {
+        try (ImageInputStream in = open(data, offset, length)) {
+            return read(reader.getImageTypes(0).next(), 1, framePool);
+        } finally {
+            reader.setInput(null);
+        }
+    }
+
+    @Override
+    public void decodeLuma(byte[] data, int offset, int length, int detectionWidth, LumaFrame target, FramePool framePool) throws IOException {
+        BufferedImage image = null;
+        try (ImageInputStream in = open(data, offset, length)) {
+            ImageTypeSpecifier gray = grayType();
+            if (gray == null) {
+                image = read(reader.getImageTypes(0).next(), 1, framePool);
+                target.load(image, detectionWidth);
+            } else {
+                int scale = decodeScale(reader.getWidth(0), detectionWidth);
+                image = read(gray, scale, framePool);
+                target.load(image, detectionWidth, scale);
+            }
+        } finally {
+            reader.setInput(null);
+            framePool.recycle(image);
+        }
+    }
+
+    @Override
+    public void close() {
+        reader.dispose();
+    }
+
+    private ImageInputStream open(byte[] data, int offset, int length) {
+        ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(data, offset, length));
+        reader.setInput(in, true, true);
+        return in;
+    }
+
+    private BufferedImage read(ImageTypeSpecifier type, int scale, FramePool framePool) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(scale, scale, 0, 0);
+        if (type.getBufferedImageType() != TYPE_CUSTOM) {
+            param.setDestination(framePool.acquire(scaled(reader.getWidth(0), scale), scaled(reader.getHeight(0), scale), type.getBufferedImageType()));
+        }
+
+        BufferedImage image = reader.read(0, param);
+        if (image == null) {
+            throw new IOException("Frame is not a readable JPEG");
+        }
+        return image;
+    }
+
+    private ImageTypeSpecifier grayType() throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            ImageTypeSpecifier type = types.next();
+            if (type.getBufferedImageType() == TYPE_BYTE_GRAY) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
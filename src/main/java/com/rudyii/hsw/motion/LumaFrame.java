@@ -0,0 +1,137 @@
+package com.rudyii.hsw.motion;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+import static java.awt.image.BufferedImage.*;
+
+// Keeps the same per pixel sample as getRGB(x, y) & 0xFF, copied straight from the backing raster
+// and point sampled every step pixels when a detection width smaller than the image is requested.
+// Grayscale images hold the decoded luma itself, possibly already downscaled by the decoder,
+// scale always maps a sample back to pixels of the full size frame
+public class LumaFrame {
+    private byte[] luma = new byte[0];
+    private int[] row = new int[0];
+    private int width, height, step = 1, scale = 1;
+
+    public void load(BufferedImage image, int detectionWidth) {
+        load(image, detectionWidth, 1);
+    }
+
+    public void load(BufferedImage image, int detectionWidth, int decodedScale) {
+        int imageStep = detectionWidth <= 0 ? 1 : Math.max(1, image.getWidth() / detectionWidth);
+        resize(image.getWidth() / imageStep, image.getHeight() / imageStep, imageStep, imageStep * decodedScale);
+
+        Raster raster = image.getRaster();
+        if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+            loadRowByRow(image);
+            return;
+        }
+
+        switch (image.getType()) {
+            case TYPE_3BYTE_BGR:
+            case TYPE_4BYTE_ABGR:
+                loadFromBytes(raster, 2);
+                break;
+            case TYPE_BYTE_GRAY:
+                loadFromBytes(raster, 0);
+                break;
+            case TYPE_INT_RGB:
+            case TYPE_INT_ARGB:
+                loadFromInts(raster, 0);
+                break;
+            case TYPE_INT_BGR:
+                loadFromInts(raster, 16);
+                break;
+            default:
+                loadRowByRow(image);
+        }
+    }
+
+    private void loadFromBytes(Raster raster, int band) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] data = dataBuffer.getData();
+        int pixelStep = sampleModel.getPixelStride() * step;
+        int rowStep = sampleModel.getScanlineStride() * step;
+        int bandOffset = dataBuffer.getOffset() + sampleModel.getBandOffsets()[band];
+
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            int offset = bandOffset + y * rowStep;
+            for (int x = 0; x < width; x++) {
+                luma[index++] = data[offset];
+                offset += pixelStep;
+            }
+        }
+    }
+
+    private void loadFromInts(Raster raster, int blueShift) {
+        DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+        int[] data = dataBuffer.getData();
+        int rowStep = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() * step;
+
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            int offset = dataBuffer.getOffset() + y * rowStep;
+            for (int x = 0; x < width; x++) {
+                luma[index++] = (byte) (data[offset] >>> blueShift);
+                offset += step;
+            }
+        }
+    }
+
+    private void loadRowByRow(BufferedImage image) {
+        int imageWidth = image.getWidth();
+        if (row.length != imageWidth) {
+            this.row = new int[imageWidth];
+        }
+
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y * step, imageWidth, 1, row, 0, imageWidth);
+            for (int x = 0; x < width; x++) {
+                luma[index++] = (byte) row[x * step];
+            }
+        }
+    }
+
+    private void resize(int width, int height, int step, int scale) {
+        this.step = step;
+        this.scale = scale;
+
+        if (this.width != width || this.height != height) {
+            this.width = width;
+            this.height = height;
+            this.luma = new byte[width * height];
+        }
+    }
+
+    public boolean sameSizeAs(LumaFrame other) {
+        return width == other.width && height == other.height && scale == other.scale;
+    }
+
+    public byte[] getLuma() {
+        return luma;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public int getSize() {
+        return width * height;
+    }
+}
@@ -0,0 +1,275 @@
+package com.rudyii.hsw.motion;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+// Parts of the multipart stream are cut by their Content-Length header, or at the next boundary when a camera sends
+// none. Only a stream without either falls back to the first JPEG end marker, which cuts frames that embed an EXIF
+// thumbnail at the thumbnail's own end
+@Slf4j
+public class MjpegFrameSource implements FrameSource {
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+    private static final int CONNECTION_TIMEOUT = 5000;
+    private static final long FRAME_TIMEOUT = 5000L;
+    private static final long RECONNECT_DELAY = 1000L;
+    private static final int MAX_HEADERS_SIZE = 1024;
+    private static final String CONTENT_LENGTH = "content-length:";
+    private static final byte MARKER = (byte) 0xFF;
+    private static final byte START_OF_IMAGE = (byte) 0xD8;
+    private static final byte END_OF_IMAGE = (byte) 0xD9;
+
+    private final String cameraName;
+    private final URL mjpegUrl;
+    private final PreRollBuffer preRollBuffer;
+    private final Thread reader;
+    private volatile boolean running = true;
+    private volatile InputStream stream;
+
+    // readBuffer is owned by the reader thread, frameBuffer is swapped in under the lock once a frame is complete
+    private byte[] readBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private byte[] frameBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private int frameOffset, frameLength;
+    private long publishedFrames, consumedFrames;
+
+    public MjpegFrameSource(String cameraName, URL mjpegUrl, PreRollBuffer preRollBuffer) {
+        this.cameraName = cameraName;
+        this.mjpegUrl = mjpegUrl;
+        this.preRollBuffer = preRollBuffer;
+        this.reader = new Thread(this::readStream, "mjpeg-" + cameraName);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public synchronized byte[] read() throws IOException {
+        long deadline = System.currentTimeMillis() + FRAME_TIMEOUT;
+
+        while (publishedFrames == consumedFrames) {
+            long timeout = deadline - System.currentTimeMillis();
+            if (!running || timeout <= 0) {
+                throw new IOException("No MJPEG frame received from camera " + cameraName + " in " + FRAME_TIMEOUT + "ms");
+            }
+            try {
+                wait(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for MJPEG frame", e);
+            }
+        }
+
+        // the frame handle keeps the returned bytes for as long as events reference them, so the frame is copied out
+        // of the swapped buffer the reader thread will reuse
+        this.consumedFrames = publishedFrames;
+        return Arrays.copyOfRange(frameBuffer, frameOffset, frameOffset + frameLength);
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        reader.interrupt();
+
+        InputStream currentStream = stream;
+        if (currentStream != null) {
+            try {
+                currentStream.close();
+            } catch (IOException e) {
+                log.warn("Failed to close MJPEG stream of camera {}", cameraName, e);
+            }
+        }
+
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void readStream() {
+        while (running) {
+            try {
+                HttpURLConnection connection = openConnection();
+                try (InputStream in = connection.getInputStream()) {
+                    this.stream = in;
+                    log.info("MJPEG stream connected on camera {}", cameraName);
+                    consume(in, delimiterOf(connection.getContentType()));
+                }
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("MJPEG stream of camera {} interrupted: {}", cameraName, e.getMessage());
+                }
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(RECONNECT_DELAY);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private HttpURLConnection openConnection() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) mjpegUrl.openConnection();
+        connection.setConnectTimeout(CONNECTION_TIMEOUT);
+        connection.setReadTimeout(CONNECTION_TIMEOUT);
+        return connection;
+    }
+
+    // cameras disagree on whether the declared boundary carries the leading dashes, the delimiter always has them
+    static byte[] delimiterOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+
+        for (String parameter : contentType.split(";")) {
+            String[] pair = parameter.trim().split("=", 2);
+            if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("boundary")) {
+                String boundary = pair[1].trim().replace("\"", "").replaceFirst("^-+", "");
+                return boundary.isEmpty() ? null : ("--" + boundary).getBytes(ISO_8859_1);
+            }
+        }
+        return null;
+    }
+
+    private void consume(InputStream in, byte[] delimiter) throws IOException {
+        int length = 0;
+        int scanned = 0;
+        int frameStart = -1;
+        int frameEnd = -1;
+
+        while (running) {
+            if (length == readBuffer.length) {
+                if (frameStart > 0) {
+                    System.arraycopy(readBuffer, frameStart, readBuffer, 0, length - frameStart);
+                    length -= frameStart;
+                    scanned -= frameStart;
+                    frameEnd -= frameEnd < 0 ? 0 : frameStart;
+                    frameStart = 0;
+                } else if (frameStart < 0) {
+                    readBuffer[0] = readBuffer[length - 1];
+                    length = 1;
+                    scanned = 0;
+                } else if (readBuffer.length < MAX_BUFFER_SIZE) {
+                    byte[] grown = new byte[readBuffer.length * 2];
+                    System.arraycopy(readBuffer, 0, grown, 0, length);
+                    this.readBuffer = grown;
+                } else {
+                    throw new IOException("MJPEG frame exceeds " + MAX_BUFFER_SIZE + " bytes");
+                }
+            }
+
+            int read = in.read(readBuffer, length, readBuffer.length - length);
+            if (read < 0) {
+                throw new EOFException("MJPEG stream closed by camera");
+            }
+            length += read;
+
+            while (true) {
+                if (frameStart < 0) {
+                    frameStart = indexOf(readBuffer, scanned, length, MARKER, START_OF_IMAGE);
+                    if (frameStart < 0) {
+                        scanned = Math.max(0, length - 1);
+                        break;
+                    }
+
+                    int contentLength = contentLength(readBuffer, Math.max(0, frameStart - MAX_HEADERS_SIZE), frameStart);
+                    if (contentLength > MAX_BUFFER_SIZE) {
+                        throw new IOException("MJPEG frame exceeds " + MAX_BUFFER_SIZE + " bytes");
+                    }
+                    frameEnd = contentLength > 0 ? frameStart + contentLength : -1;
+                    scanned = frameStart + 2;
+                }
+
+                int end;
+                if (frameEnd >= 0) {
+                    end = frameEnd <= length ? frameEnd : -1;
+                } else if (delimiter != null) {
+                    end = endBeforeDelimiter(readBuffer, frameStart, indexOf(readBuffer, scanned, length, delimiter));
+                } else {
+                    end = indexOf(readBuffer, scanned, length, MARKER, END_OF_IMAGE);
+                    end = end < 0 ? -1 : end + 2;
+                }
+
+                if (end < 0) {
+                    scanned = Math.max(frameStart + 2, length - (delimiter == null ? 1 : delimiter.length - 1));
+                    break;
+                }
+
+                if (preRollBuffer != null) {
+                    preRollBuffer.append(readBuffer, frameStart, end - frameStart);
+                }
+                length = publish(frameStart, end, length);
+                frameStart = -1;
+                frameEnd = -1;
+                scanned = 0;
+            }
+        }
+    }
+
+    // the line break in front of the delimiter belongs to the multipart framing, the JPEG itself ends with FFD9
+    private static int endBeforeDelimiter(byte[] buffer, int frameStart, int delimiter) {
+        if (delimiter < 0) {
+            return -1;
+        }
+
+        int end = delimiter;
+        while (end > frameStart && (buffer[end - 1] == '\n' || buffer[end - 1] == '\r')) {
+            end--;
+        }
+        return end;
+    }
+
+    static int contentLength(byte[] buffer, int from, int to) {
+        for (String line : new String(buffer, from, to - from, ISO_8859_1).split("\n")) {
+            String header = line.trim().toLowerCase(Locale.ROOT);
+            if (header.startsWith(CONTENT_LENGTH)) {
+                try {
+                    return Integer.parseInt(header.substring(CONTENT_LENGTH.length()).trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static int indexOf(byte[] buffer, int from, int to, byte... pattern) {
+        int last = to - pattern.length;
+        for (int i = Math.max(from, 0); i <= last; i++) {
+            int matched = 0;
+            while (matched < pattern.length && buffer[i + matched] == pattern[matched]) {
+                matched++;
+            }
+            if (matched == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private synchronized int publish(int frameStart, int frameEnd, int length) {
+        byte[] completed = readBuffer;
+        byte[] spare = frameBuffer.length >= completed.length ? frameBuffer : new byte[completed.length];
+        int leftover = length - frameEnd;
+
+        System.arraycopy(completed, frameEnd, spare, 0, leftover);
+
+        this.readBuffer = spare;
+        this.frameBuffer = completed;
+        this.frameOffset = frameStart;
+        this.frameLength = frameEnd - frameStart;
+        this.publishedFrames++;
+        notifyAll();
+
+        return leftover;
+    }
+}
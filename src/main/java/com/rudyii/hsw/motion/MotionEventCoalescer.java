@@ -0,0 +1,85 @@
+package com.rudyii.hsw.motion;
+
+import com.rudyii.hsw.objects.events.MotionDetectedEvent;
+import com.rudyii.hsw.services.EventService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ScheduledFuture;
+
+// The first detection of a quiet camera is published right away, detections inside the following window are merged
+// into one trailing event carrying the peak motion area frame, published when the window closes.
+// Frames of merged detections that are not the peak are released as soon as they lose.
+// Window flushes share the DetectionScheduler threads with the detector ticks, a flush only hands the peak to the event
+// bus queues and a busy pool delays it until a tick finishes its frame read
+@Slf4j
+public class MotionEventCoalescer {
+    private final String cameraName;
+    private final EventService eventService;
+    private final DetectionScheduler detectionScheduler;
+    private MotionDetectedEvent peak;
+    private int merged;
+    private long window;
+    private ScheduledFuture<?> flush;
+
+    public MotionEventCoalescer(String cameraName, EventService eventService, DetectionScheduler detectionScheduler) {
+        this.cameraName = cameraName;
+        this.eventService = eventService;
+        this.detectionScheduler = detectionScheduler;
+    }
+
+    public synchronized void submit(MotionDetectedEvent event, long window) {
+        if (window <= 0) {
+            eventService.publish(event);
+            return;
+        }
+
+        if (flush == null) {
+            this.window = window;
+            eventService.publish(event);
+            openWindow();
+            return;
+        }
+
+        merged += event.getDetections();
+        if (peak == null || event.getMotionArea() > peak.getMotionArea()) {
+            if (peak != null) {
+                peak.releaseFrames();
+            }
+            this.peak = event;
+        } else {
+            event.releaseFrames();
+        }
+    }
+
+    private void openWindow() {
+        this.flush = detectionScheduler.scheduleAt(this::closeWindow, System.currentTimeMillis() + window);
+    }
+
+    private synchronized void closeWindow() {
+        if (peak == null) {
+            this.flush = null;
+            return;
+        }
+
+        peak.setDetections(merged);
+        log.info("Publishing {} motion detections coalesced on Camera {} with peak motion area size : {}%",
+                merged, cameraName, peak.getMotionArea());
+        eventService.publish(peak);
+
+        this.peak = null;
+        this.merged = 0;
+        openWindow();
+    }
+
+    public synchronized void cancel() {
+        if (flush != null) {
+            flush.cancel(false);
+            this.flush = null;
+        }
+        if (peak != null) {
+            peak.releaseFrames();
+        }
+        this.peak = null;
+        this.merged = 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.rudyii.hsw.motion;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_CUSTOM;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+public class MotionMask {
+    private long[] bits = new long[0];
+    private int width, height;
+
+    public void reset(int width, int height) {
+        int words = (width * height + 63) >>> 6;
+
+        if (bits.length != words) {
+            this.bits = new long[words];
+        } else {
+            Arrays.fill(bits, 0L);
+        }
+
+        this.width = width;
+        this.height = height;
+    }
+
+    public void set(int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    public boolean get(int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public MotionMask copy() {
+        MotionMask copy = new MotionMask();
+        copy.bits = bits.clone();
+        copy.width = width;
+        copy.height = height;
+        return copy;
+    }
+
+    public long[] getBits() {
+        return bits;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // the motion object comes from the pool and should be recycled once encoded
+    public BufferedImage render(BufferedImage source, int scale, FramePool framePool) {
+        int type = source.getType() == TYPE_CUSTOM ? TYPE_INT_RGB : source.getType();
+        BufferedImage motionObject = framePool.acquireBlank(source.getWidth(), source.getHeight(), type);
+        int[] block = new int[scale * scale];
+
+        for (int word = 0; word < bits.length; word++) {
+            long value = bits[word];
+            while (value != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(value);
+                int x = (index % width) * scale;
+                int y = (index / width) * scale;
+                int blockWidth = Math.min(scale, source.getWidth() - x);
+                int blockHeight = Math.min(scale, source.getHeight() - y);
+
+                source.getRGB(x, y, blockWidth, blockHeight, block, 0, blockWidth);
+                motionObject.setRGB(x, y, blockWidth, blockHeight, block, 0, blockWidth);
+                value &= value - 1;
+            }
+        }
+
+        return motionObject;
+    }
+}
@@ -0,0 +1,74 @@
+package com.rudyii.hsw.motion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Bounded ring of the most recent encoded frames kept in a direct buffer outside of the heap,
+// the oldest frames are overwritten once the budget is used up
+public class PreRollBuffer {
+    private final ByteBuffer ring;
+    private final ArrayDeque<long[]> frames = new ArrayDeque<>();
+    private final byte[] transfer = new byte[64 * 1024];
+    private int writePosition, used;
+
+    public PreRollBuffer(int capacity) {
+        this.ring = ByteBuffer.allocateDirect(capacity);
+    }
+
+    public synchronized void append(byte[] data, int offset, int length) {
+        int capacity = ring.capacity();
+        if (length > capacity) {
+            return;
+        }
+
+        while (capacity - used < length) {
+            used -= (int) frames.removeFirst()[1];
+        }
+
+        frames.addLast(new long[]{writePosition, length, System.currentTimeMillis()});
+
+        int firstPart = Math.min(length, capacity - writePosition);
+        ring.position(writePosition);
+        ring.put(data, offset, firstPart);
+        if (firstPart < length) {
+            ring.position(0);
+            ring.put(data, offset + firstPart, length - firstPart);
+        }
+
+        writePosition = (writePosition + length) % capacity;
+        used += length;
+    }
+
+    // writes the buffered frames oldest first and empties the buffer, returns their frame rate or 0 when nothing was buffered
+    public synchronized double drainTo(OutputStream out) throws IOException {
+        if (frames.isEmpty()) {
+            return 0;
+        }
+
+        int count = frames.size();
+        long firstFrameTime = frames.getFirst()[2];
+        long lastFrameTime = frames.getLast()[2];
+
+        for (long[] frame : frames) {
+            int position = (int) frame[0];
+            int remaining = (int) frame[1];
+            while (remaining > 0) {
+                int chunk = Math.min(Math.min(remaining, transfer.length), ring.capacity() - position);
+                ring.position(position);
+                ring.get(transfer, 0, chunk);
+                out.write(transfer, 0, chunk);
+                position = (position + chunk) % ring.capacity();
+                remaining -= chunk;
+            }
+        }
+
+        frames.clear();
+        this.used = 0;
+        this.writePosition = 0;
+
+        long span = lastFrameTime - firstFrameTime;
+        return span > 0 ? (count - 1) * 1000.0 / span : 1;
+    }
+}
@@ -0,0 +1,94 @@
+package com.rudyii.hsw.motion;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.Polygon;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Packed bitset of the pixels watched on the detection plane, rebuilt only when the regions or the plane change.
+// Regions are polygons in full resolution pixels: "x1,y1 x2,y2 x3,y3" separated by ';'
+@Slf4j
+public class RegionMask {
+    private long[] bits = new long[0];
+    private int width, height, scale, activeCount;
+    private String ignoreRegions;
+
+    public void compile(String ignoreRegions, int width, int height, int scale) {
+        String regions = ignoreRegions == null ? "" : ignoreRegions.trim();
+        if (regions.equals(this.ignoreRegions) && this.width == width && this.height == height && this.scale == scale) {
+            return;
+        }
+
+        this.ignoreRegions = regions;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+
+        int size = width * height;
+        this.bits = new long[(size + 63) >>> 6];
+        Arrays.fill(bits, -1L);
+        if ((size & 63) != 0) {
+            bits[bits.length - 1] = (1L << size) - 1;
+        }
+
+        List<Polygon> polygons = parse(regions);
+        int ignored = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (isIgnored(polygons, x * scale + scale / 2, y * scale + scale / 2)) {
+                    int index = y * width + x;
+                    bits[index >>> 6] &= ~(1L << index);
+                    ignored++;
+                }
+            }
+        }
+        this.activeCount = size - ignored;
+    }
+
+    private boolean isIgnored(List<Polygon> polygons, int x, int y) {
+        for (Polygon polygon : polygons) {
+            if (polygon.contains(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Polygon> parse(String regions) {
+        List<Polygon> polygons = new ArrayList<>();
+        if (regions.isEmpty()) {
+            return polygons;
+        }
+
+        for (String region : regions.split(";")) {
+            String[] points = region.trim().split("\\s+");
+            if (points.length < 3) {
+                log.warn("Ignoring region with less than 3 points: {}", region);
+                continue;
+            }
+
+            try {
+                Polygon polygon = new Polygon();
+                for (String point : points) {
+                    String[] coordinates = point.split(",");
+                    polygon.addPoint(Integer.parseInt(coordinates[0].trim()), Integer.parseInt(coordinates[1].trim()));
+                }
+                polygons.add(polygon);
+            } catch (RuntimeException e) {
+                log.warn("Ignoring malformed region: {}", region, e);
+            }
+        }
+
+        return polygons;
+    }
+
+    public long[] getBits() {
+        return bits;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+}
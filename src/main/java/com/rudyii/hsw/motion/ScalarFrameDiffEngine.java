@@ -0,0 +1,41 @@
+package com.rudyii.hsw.motion;
+
+public class ScalarFrameDiffEngine implements FrameDiffEngine {
+
+    @Override
+    public int diff(LumaFrame previous, LumaFrame current, int noiseLevel, RegionMask regionMask, MotionMask motionMask) {
+        byte[] previousLuma = previous.getLuma();
+        byte[] currentLuma = current.getLuma();
+        long[] regionBits = regionMask.getBits();
+        int size = current.getSize();
+
+        int diff = 0;
+        boolean prevPixelIsDifferent = false;
+        for (int word = 0; word < regionBits.length; word++) {
+            long watched = regionBits[word];
+            if (watched == 0) {
+                prevPixelIsDifferent = false;
+                continue;
+            }
+
+            int end = Math.min((word << 6) + 64, size);
+            for (int i = word << 6; i < end; i++) {
+                if ((watched & (1L << i)) == 0) {
+                    prevPixelIsDifferent = false;
+                    continue;
+                }
+
+                boolean diffExists = Math.abs((previousLuma[i] & 0xFF) - (currentLuma[i] & 0xFF)) > noiseLevel;
+
+                if (diffExists && prevPixelIsDifferent) {
+                    motionMask.set(i);
+                    diff++;
+                }
+
+                prevPixelIsDifferent = diffExists;
+            }
+        }
+
+        return diff;
+    }
+}
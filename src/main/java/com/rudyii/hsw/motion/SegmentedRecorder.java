@@ -0,0 +1,179 @@
+package com.rudyii.hsw.motion;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// Keeps one ffmpeg per camera writing short segments named by their start epoch second into the spool,
+// segments older than a few segment lengths are purged unless a capture has marked them.
+// With -c copy ffmpeg only cuts on keyframes, so a segment ends where the next one starts, not after segmentDuration.
+// Nothing else bounds the spool, a segment that fails to delete is retried and logged on every purge
+@Slf4j
+public class SegmentedRecorder {
+    private static final long RESTART_DELAY = 5000L;
+    private static final int KEPT_SEGMENTS = 3;
+
+    private final String cameraName;
+    private final String rtspUrl;
+    private final long segmentDuration;
+    private final File spool;
+    private final ConcurrentLinkedQueue<long[]> marks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+    private volatile Process process;
+    private Thread supervisor;
+
+    public SegmentedRecorder(String cameraName, String rtspUrl, long segmentDuration, File spool) {
+        this.cameraName = cameraName;
+        this.rtspUrl = rtspUrl;
+        this.segmentDuration = segmentDuration;
+        this.spool = spool;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        this.running = true;
+        this.supervisor = new Thread(this::supervise, "recorder-" + cameraName);
+        supervisor.setDaemon(true);
+        supervisor.start();
+        log.info("Segmented recorder started on camera {} into {}", cameraName, spool.getAbsolutePath());
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+
+        this.running = false;
+        supervisor.interrupt();
+
+        Process current = process;
+        if (current != null) {
+            current.destroy();
+        }
+        log.info("Segmented recorder stopped on camera {}", cameraName);
+    }
+
+    private void supervise() {
+        while (running) {
+            try {
+                this.process = new ProcessBuilder("bin/record_segments.sh", rtspUrl, String.valueOf(segmentDuration), spool.getPath())
+                        .inheritIO()
+                        .start();
+
+                while (running && !process.waitFor(segmentDuration, TimeUnit.SECONDS)) {
+                    purge();
+                }
+
+                if (running) {
+                    log.warn("Segmented recorder on camera {} exited with code {}, restarting", cameraName, process.exitValue());
+                    Thread.sleep(RESTART_DELAY);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("Segmented recorder on camera {} failed to start", cameraName, e);
+                try {
+                    Thread.sleep(RESTART_DELAY);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+
+        Process current = process;
+        if (current != null && current.isAlive()) {
+            current.destroyForcibly();
+        }
+    }
+
+    private void purge() {
+        long keepFrom = System.currentTimeMillis() - KEPT_SEGMENTS * segmentDuration * 1000;
+
+        List<File> segments = segments();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            File segment = segments.get(i);
+            long start = startOf(segment);
+            long end = endOf(segments, i);
+            if (end < keepFrom && !isMarked(start, end) && !segment.delete()) {
+                log.warn("Failed to delete segment {}", segment.getAbsolutePath());
+            }
+        }
+    }
+
+    private boolean isMarked(long segmentStart, long segmentEnd) {
+        for (long[] mark : marks) {
+            if (overlaps(segmentStart, segmentEnd, mark[0], mark[1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean overlaps(long segmentStart, long segmentEnd, long fromMillis, long toMillis) {
+        return segmentStart < toMillis && segmentEnd > fromMillis;
+    }
+
+    // only defined for completed segments, the newest one is still being written
+    private long endOf(List<File> segments, int index) {
+        return startOf(segments.get(index + 1));
+    }
+
+    public long[] mark(long fromMillis, long toMillis) {
+        long[] mark = {fromMillis, toMillis};
+        marks.add(mark);
+        return mark;
+    }
+
+    public void release(long[] mark) {
+        marks.remove(mark);
+    }
+
+    // completed segments overlapping the window, the newest segment is still being written and never returned
+    public List<File> segmentsBetween(long fromMillis, long toMillis) {
+        List<File> segments = segments();
+        List<File> result = new ArrayList<>();
+
+        for (int i = 0; i < segments.size() - 1; i++) {
+            File segment = segments.get(i);
+            if (overlaps(startOf(segment), endOf(segments, i), fromMillis, toMillis)) {
+                result.add(segment);
+            }
+        }
+
+        return result;
+    }
+
+    private List<File> segments() {
+        File[] files = spool.listFiles((dir, name) -> name.endsWith(".ts"));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.removeIf(segment -> startOf(segment) < 0);
+        segments.sort(Comparator.comparingLong(this::startOf));
+        return segments;
+    }
+
+    private long startOf(File segment) {
+        String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - 3)) * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public long getSegmentDuration() {
+        return segmentDuration;
+    }
+}
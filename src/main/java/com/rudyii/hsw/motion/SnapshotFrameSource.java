@@ -0,0 +1,40 @@
+package com.rudyii.hsw.motion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+// A hung camera fails its tick after timeout instead of holding one of the shared detection threads
+public class SnapshotFrameSource implements FrameSource {
+    private final URL jpegUrl;
+    private final PreRollBuffer preRollBuffer;
+    private final int timeout;
+
+    public SnapshotFrameSource(URL jpegUrl, PreRollBuffer preRollBuffer, int timeout) {
+        this.jpegUrl = jpegUrl;
+        this.preRollBuffer = preRollBuffer;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public byte[] read() throws IOException {
+        byte[] snapshot;
+        HttpURLConnection connection = (HttpURLConnection) jpegUrl.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        try (InputStream in = connection.getInputStream()) {
+            snapshot = in.readAllBytes();
+        }
+
+        if (preRollBuffer != null) {
+            preRollBuffer.append(snapshot, 0, snapshot.length);
+        }
+
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,82 @@
+package com.rudyii.hsw.motion;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+// Same result as ScalarFrameDiffEngine, but compares 8 pixels per long (SIMD within a register): even and odd bytes
+// are spread over 16 bit lanes where a biased subtraction leaves the "|a - b| > noiseLevel" answer in each lane's top bit.
+// Lane answers are gathered into a 64 pixel word so the neighbour rule, region mask and motion mask are plain bit ops.
+public class SwarFrameDiffEngine implements FrameDiffEngine {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long LOW_BYTES = 0x00FF00FF00FF00FFL;
+    private static final long LANE_BIAS = 0x4000400040004000L;
+    private static final long LANE_TOP_BITS = 0x8000800080008000L;
+    private static final long LANE_GATHER = (1L << 56) | (1L << 42) | (1L << 28) | (1L << 14);
+
+    @Override
+    public int diff(LumaFrame previous, LumaFrame current, int noiseLevel, RegionMask regionMask, MotionMask motionMask) {
+        byte[] previousLuma = previous.getLuma();
+        byte[] currentLuma = current.getLuma();
+        long[] regionBits = regionMask.getBits();
+        long[] motionBits = motionMask.getBits();
+        int size = current.getSize();
+        long threshold = (0x4000L - noiseLevel - 1) * 0x0001000100010001L;
+
+        int diff = 0;
+        long carry = 0;
+        for (int word = 0; word < regionBits.length; word++) {
+            long watched = regionBits[word];
+            if (watched == 0) {
+                carry = 0;
+                continue;
+            }
+
+            long different = 0;
+            int base = word << 6;
+            for (int chunk = 0; chunk < 64; chunk += 8) {
+                int offset = base + chunk;
+                if (offset + 8 <= size) {
+                    different |= differentPixels(previousLuma, currentLuma, offset, threshold) << chunk;
+                } else {
+                    for (int i = offset; i < size; i++) {
+                        if (Math.abs((previousLuma[i] & 0xFF) - (currentLuma[i] & 0xFF)) > noiseLevel) {
+                            different |= 1L << (i - base);
+                        }
+                    }
+                    break;
+                }
+            }
+
+            different &= watched;
+            long motion = different & ((different << 1) | carry);
+            carry = different >>> 63;
+
+            motionBits[word] = motion;
+            diff += Long.bitCount(motion);
+        }
+
+        return diff;
+    }
+
+    private static long differentPixels(byte[] previousLuma, byte[] currentLuma, int offset, long threshold) {
+        long previousPixels = (long) LONGS.get(previousLuma, offset);
+        long currentPixels = (long) LONGS.get(currentLuma, offset);
+
+        long even = differentLanes(previousPixels & LOW_BYTES, currentPixels & LOW_BYTES, threshold);
+        long odd = differentLanes((previousPixels >>> 8) & LOW_BYTES, (currentPixels >>> 8) & LOW_BYTES, threshold);
+
+        return gather(even) | (gather(odd) << 1);
+    }
+
+    private static long differentLanes(long previous, long current, long threshold) {
+        long previousHigher = ((previous | LANE_BIAS) - current) + threshold;
+        long currentHigher = ((current | LANE_BIAS) - previous) + threshold;
+        return (previousHigher | currentHigher) & LANE_TOP_BITS;
+    }
+
+    // moves lane top bits 15, 31, 47, 63 to bits 0, 2, 4, 6
+    private static long gather(long laneTopBits) {
+        return ((laneTopBits >>> 15) * LANE_GATHER) >>> 56;
+    }
+}
@@ -0,0 +1,138 @@
+package com.rudyii.hsw.motion;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+import static com.rudyii.hsw.motion.FrameDecoder.decodeScale;
+import static com.rudyii.hsw.motion.FrameDecoder.scaled;
+import static java.awt.image.BufferedImage.TYPE_3BYTE_BGR;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+
+// libjpeg-turbo through its own Java binding (turbojpeg.jar and the native library), bound reflectively so the
+// binding stays an optional runtime drop in. Luma frames skip the chroma planes and are downscaled in the DCT domain,
+// a 1/8 decode only evaluates the DC coefficient of every block
+@Slf4j
+public class TurboJpegFrameDecoder implements FrameDecoder {
+    private static final String DECOMPRESSOR_CLASS = "org.libjpegturbo.turbojpeg.TJDecompressor";
+    private static final int FLAG_FASTDCT = 2048;
+    private static final Binding BINDING = bind();
+
+    private final Object decompressor;
+
+    public TurboJpegFrameDecoder() {
+        if (BINDING == null) {
+            throw new IllegalStateException("libjpeg-turbo is not available");
+        }
+        try {
+            this.decompressor = BINDING.constructor.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create libjpeg-turbo decompressor", e);
+        }
+    }
+
+    public static boolean isAvailable() {
+        return BINDING != null;
+    }
+
+    @Override
+    public BufferedImage decode(byte[] data, int offset, int length, FramePool framePool) throws IOException {
+        setSource(data, offset, length);
+        return decompress(TYPE_3BYTE_BGR, 1, 0, framePool);
+    }
+
+    @Override
+    public void decodeLuma(byte[] data, int offset, int length, int detectionWidth, LumaFrame target, FramePool framePool) throws IOException {
+        setSource(data, offset, length);
+        int scale = decodeScale(dimension(BINDING.getWidth), detectionWidth);
+        BufferedImage image = decompress(TYPE_BYTE_GRAY, scale, FLAG_FASTDCT, framePool);
+        try {
+            target.load(image, detectionWidth, scale);
+        } finally {
+            framePool.recycle(image);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            BINDING.close.invoke(decompressor);
+        } catch (Throwable e) {
+            log.warn("Failed to close libjpeg-turbo decompressor: {}", e.toString());
+        }
+    }
+
+    private void setSource(byte[] data, int offset, int length) throws IOException {
+        byte[] jpeg = offset == 0 ? data : Arrays.copyOfRange(data, offset, offset + length);
+        try {
+            BINDING.setSourceImage.invoke(decompressor, jpeg, length);
+        } catch (Throwable e) {
+            throw new IOException("Frame is not a readable JPEG", e);
+        }
+    }
+
+    private BufferedImage decompress(int type, int scale, int flags, FramePool framePool) throws IOException {
+        BufferedImage image = framePool.acquire(scaled(dimension(BINDING.getWidth), scale), scaled(dimension(BINDING.getHeight), scale), type);
+        try {
+            BINDING.decompress.invoke(decompressor, image, flags);
+            return image;
+        } catch (Throwable e) {
+            framePool.recycle(image);
+            throw new IOException("Failed to decode frame with libjpeg-turbo", e);
+        }
+    }
+
+    private int dimension(MethodHandle getter) throws IOException {
+        try {
+            return (int) getter.invoke(decompressor);
+        } catch (Throwable e) {
+            throw new IOException("Frame is not a readable JPEG", e);
+        }
+    }
+
+    // the native library is loaded by the binding's static initializer, a missing one surfaces as a LinkageError here
+    private static Binding bind() {
+        try {
+            Class<?> type = Class.forName(DECOMPRESSOR_CLASS);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Binding binding = new Binding(
+                    lookup.findConstructor(type, MethodType.methodType(void.class)),
+                    lookup.findVirtual(type, "setSourceImage", MethodType.methodType(void.class, byte[].class, int.class)),
+                    lookup.findVirtual(type, "getWidth", MethodType.methodType(int.class)),
+                    lookup.findVirtual(type, "getHeight", MethodType.methodType(int.class)),
+                    lookup.findVirtual(type, "decompress", MethodType.methodType(void.class, BufferedImage.class, int.class)),
+                    lookup.findVirtual(type, "close", MethodType.methodType(void.class)));
+            binding.close.invoke(binding.constructor.invoke());
+            return binding;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Throwable e) {
+            log.warn("libjpeg-turbo binding found but unusable, falling back to ImageIO: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static final class Binding {
+        private final MethodHandle constructor;
+        private final MethodHandle setSourceImage;
+        private final MethodHandle getWidth;
+        private final MethodHandle getHeight;
+        private final MethodHandle decompress;
+        private final MethodHandle close;
+
+        private Binding(MethodHandle constructor, MethodHandle setSourceImage, MethodHandle getWidth,
+                        MethodHandle getHeight, MethodHandle decompress, MethodHandle close) {
+            this.constructor = constructor;
+            this.setSourceImage = setSourceImage;
+            this.getWidth = getWidth;
+            this.getHeight = getHeight;
+            this.decompress = decompress;
+            this.close = close;
+        }
+    }
+}
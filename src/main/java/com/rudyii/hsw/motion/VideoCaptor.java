@@ -1,6 +1,7 @@
 package com.rudyii.hsw.motion;
 
 import com.rudyii.hsw.configuration.OptionsService;
+import com.rudyii.hsw.objects.FrameHandle;
 import com.rudyii.hsw.objects.events.CaptureEvent;
 import com.rudyii.hsw.services.EventService;
 import lombok.extern.slf4j.Slf4j;
@@ -10,18 +11,18 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.file.Files;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import static com.rudyii.hsw.configuration.OptionsService.RECORD_INTERVAL;
+import static com.rudyii.hsw.enums.CaptureStateEnum.CAPTURING;
 
 @Slf4j
 @Component
@@ -29,17 +30,22 @@ import static com.rudyii.hsw.configuration.OptionsService.RECORD_INTERVAL;
 public class VideoCaptor {
     private final EventService eventService;
     private final OptionsService optionsService;
+    private final FrameHandleFactory frameHandleFactory;
 
     private String cameraName;
     private String rtspUrl;
     private File result;
-    private BufferedImage image;
+    private File preRoll;
+    private double preRollFrameRate;
+    private FrameHandle frame;
     private long eventTimeMillis;
+    private long recordDuration;
 
     @Autowired
-    public VideoCaptor(EventService eventService, OptionsService optionsService) {
+    public VideoCaptor(EventService eventService, OptionsService optionsService, FrameHandleFactory frameHandleFactory) {
         this.eventService = eventService;
         this.optionsService = optionsService;
+        this.frameHandleFactory = frameHandleFactory;
     }
 
     @Async
@@ -49,28 +55,134 @@ public class VideoCaptor {
         this.cameraName = camera.getCameraName();
         this.rtspUrl = camera.getRtspUrl();
         this.result = new File(System.getProperty("java.io.tmpdir") + "/" + eventTimeMillis + ".mp4");
+        this.recordDuration = (Long) optionsService.getOption(RECORD_INTERVAL);
+        CaptureStateMachine captureState = camera.getCaptureState();
 
         System.out.println("A new motion detected: {}" + new SimpleDateFormat("yyyy.MM.dd-HH.mm.ss.SSS").format(new Date()));
 
         try {
-            this.image = ImageIO.read(new URL(camera.getJpegUrl()));
-            getFfmpegStream();
-        } catch (IOException e) {
-            log.error("Failed to process output file", e);
+            this.frame = frameHandleFactory.read(cameraName, new URL(camera.getJpegUrl()));
+
+            if (camera.getSegmentedRecorder() != null) {
+                if (concatSegments(camera.getSegmentedRecorder(), captureState)) {
+                    publishCaptureEvent();
+                } else {
+                    captureState.captureFailed();
+                }
+            } else {
+                flushPreRoll(camera.getPreRollBuffer());
+
+                // a clip recorded in full covers the motion up to the moment its process ended
+                long clipEnded;
+                while ((clipEnded = captureClip()) > 0) {
+                    long extension = captureState.finishOrExtend(clipEnded, result.getName());
+                    if (extension == 0) {
+                        break;
+                    }
+
+                    this.eventTimeMillis = System.currentTimeMillis();
+                    this.result = new File(System.getProperty("java.io.tmpdir") + "/" + eventTimeMillis + ".mp4");
+                    this.recordDuration = (extension + 999) / 1000;
+                    this.preRollFrameRate = 0;
+
+                    log.info("Motion continues on camera {}, capturing {} more seconds", cameraName, recordDuration);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Video capture failed on camera {}", cameraName, e);
+        } finally {
+            // any capture that did not reach UPLOADING frees the camera for the next motion
+            if (captureState.getState() == CAPTURING) {
+                captureState.captureFailed();
+            }
+            if (frame != null) {
+                frame.release();
+            }
+            if (preRoll != null && preRoll.exists() && !preRoll.delete()) {
+                log.warn("Failed to delete pre-roll file {}", preRoll.getAbsolutePath());
+            }
+        }
+    }
+
+    // publishes the clip when one was written and returns when its process ended, 0 when the capture can not go on
+    private long captureClip() throws IOException {
+        long ran = getFfmpegStream();
+        long clipEnded = System.currentTimeMillis();
+        if (ran < 0 || !result.exists() || result.length() == 0) {
+            log.error("No clip recorded on camera {}, capture stopped", cameraName);
+            return 0;
         }
 
         publishCaptureEvent();
+        if (ran < recordDuration * 1000) {
+            log.warn("Capture on camera {} ended after {} ms instead of {} s, capture stopped", cameraName, ran, recordDuration);
+            return 0;
+        }
+        return clipEnded;
+    }
+
+    private void flushPreRoll(PreRollBuffer preRollBuffer) throws IOException {
+        if (preRollBuffer == null) {
+            return;
+        }
+
+        this.preRoll = new File(System.getProperty("java.io.tmpdir") + "/" + eventTimeMillis + "-preroll.mjpeg");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(preRoll))) {
+            this.preRollFrameRate = preRollBuffer.drainTo(out);
+        }
     }
 
     private void publishCaptureEvent() {
         eventService.publish(CaptureEvent.builder()
                 .cameraName(cameraName)
                 .uploadCandidate(result)
-                .image(image)
+                .frame(frame.retain())
                 .eventId(eventTimeMillis).build());
     }
 
-    private void getFfmpegStream() throws IOException {
+    // returns true when the concatenated clip was written
+    private boolean concatSegments(SegmentedRecorder recorder, CaptureStateMachine captureState) throws IOException {
+        long segmentMillis = recorder.getSegmentDuration() * 1000;
+        long from = eventTimeMillis - 2 * segmentMillis;
+        long to = eventTimeMillis + recordDuration * 1000;
+        long[] mark = recorder.mark(from, Long.MAX_VALUE);
+        File segmentsList = new File(System.getProperty("java.io.tmpdir") + "/" + eventTimeMillis + "-segments.txt");
+
+        try {
+            long extension;
+            while ((extension = captureState.finishOrExtend(System.currentTimeMillis(), result.getName())) > 0) {
+                to = System.currentTimeMillis() + extension;
+                Thread.sleep(extension);
+            }
+            Thread.sleep(segmentMillis);
+
+            List<File> segments = recorder.segmentsBetween(from, to);
+            if (segments.isEmpty()) {
+                log.error("No recorded segments found on camera {} for event {}", cameraName, eventTimeMillis);
+                return false;
+            }
+
+            try (PrintWriter writer = new PrintWriter(segmentsList)) {
+                for (File segment : segments) {
+                    writer.println("file '" + segment.getCanonicalPath() + "'");
+                }
+            }
+
+            log.info("Concatenating {} segments on camera {} into {}", segments.size(), cameraName, result.getCanonicalPath());
+            runProcess(new ProcessBuilder("bin/concat_segments.sh", segmentsList.getCanonicalPath(), result.getCanonicalPath()));
+            return result.exists() && result.length() > 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Segments concatenation interrupted on camera {}", cameraName, e);
+            return false;
+        } finally {
+            recorder.release(mark);
+            Files.deleteIfExists(segmentsList.toPath());
+        }
+    }
+
+    // returns how long the capture process ran in milliseconds, -1 when it did not run
+    private long getFfmpegStream() throws IOException {
         log.info("Starting capture on camera {}...", cameraName);
         List<String> captureCommand = new ArrayList<>();
 
@@ -82,7 +194,7 @@ public class VideoCaptor {
 
             } else {
                 log.error("/usr/bin/ffmpeg or /usr/bin/avconv not found, please install, ignoring video capture");
-                return;
+                return -1;
             }
         } else if (SystemUtils.IS_OS_WINDOWS) {
             if (new File("C:/Windows/System32/ffmpeg.exe").exists()) {
@@ -91,35 +203,45 @@ public class VideoCaptor {
 
             } else {
                 log.error("C:/Windows/System32/ffmpeg.exe not found, please install, ignoring video capture");
-                return;
+                return -1;
             }
         } else {
             log.error("Unsupported OS detected, ignoring video capture");
-            return;
+            return -1;
         }
 
         captureCommand.add(rtspUrl);
-        captureCommand.add(String.valueOf(optionsService.getOption(RECORD_INTERVAL)));
+        captureCommand.add(String.valueOf(recordDuration));
         captureCommand.add(result.getCanonicalPath());
         captureCommand.add(cameraName);
+        if (preRollFrameRate > 0) {
+            captureCommand.add(preRoll.getCanonicalPath());
+            captureCommand.add(String.format(Locale.ROOT, "%.2f", preRollFrameRate));
+        }
 
         ProcessBuilder captureProcess = new ProcessBuilder(captureCommand);
-        runProcess(captureProcess);
+        return runProcess(captureProcess);
     }
 
     private void printParametersIntoLog() throws IOException {
         log.info("#1 as source: {}", rtspUrl);
-        log.info("#2 as record interval in seconds: {}", optionsService.getOption(RECORD_INTERVAL));
+        log.info("#2 as record interval in seconds: {}", recordDuration);
         log.info("#3 as a capture result: {}", result.getCanonicalPath());
         log.info("#4 as a camera name: {}", cameraName);
+        if (preRollFrameRate > 0) {
+            log.info("#5 as a pre-roll: {}", preRoll.getCanonicalPath());
+            log.info("#6 as a pre-roll frame rate: {}", preRollFrameRate);
+        }
     }
 
-    private void runProcess(ProcessBuilder process) {
+    // returns how long the process ran in milliseconds, -1 when it could not be started
+    private long runProcess(ProcessBuilder process) {
+        long started = System.currentTimeMillis();
         try {
             Process runningProcess = process.inheritIO().start();
-            runningProcess.waitFor((Long) optionsService.getOption(RECORD_INTERVAL) + 1, TimeUnit.SECONDS);
+            runningProcess.waitFor(recordDuration + 1, TimeUnit.SECONDS);
             if (runningProcess.isAlive()) {
-                runningProcess.waitFor((Long) optionsService.getOption(RECORD_INTERVAL) / 2, TimeUnit.SECONDS);
+                runningProcess.waitFor(recordDuration / 2, TimeUnit.SECONDS);
                 runningProcess.destroy();
 
                 if (runningProcess.isAlive()) {
@@ -128,6 +250,8 @@ public class VideoCaptor {
             }
         } catch (Exception e) {
             log.error("Video capture failed!", e);
+            return -1;
         }
+        return System.currentTimeMillis() - started;
     }
 }
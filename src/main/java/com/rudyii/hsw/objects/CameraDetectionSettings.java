@@ -0,0 +1,20 @@
+package com.rudyii.hsw.objects;
+
+import com.rudyii.hsw.enums.DetectionModeEnum;
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class CameraDetectionSettings {
+    private long interval;
+    private int noiseLevel;
+    private long motionArea;
+    private int detectionResolution;
+    private DetectionModeEnum detectionMode;
+    private long minBlobArea;
+    private String ignoreRegions;
+    private long motionEventWindow;
+    private boolean showMotionArea;
+    private boolean vectorizedDiff;
+}
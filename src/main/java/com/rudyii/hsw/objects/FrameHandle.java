@@ -0,0 +1,62 @@
+package com.rudyii.hsw.objects;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// An encoded JPEG frame shared by every event and consumer of one motion instead of a decoded BufferedImage.
+// Starts with one reference owned by its creator, the last release drops the bytes from the camera's retained total
+public class FrameHandle {
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicLong retainedBytes;
+    private final int size;
+    private volatile byte[] jpeg;
+
+    public FrameHandle(byte[] jpeg, AtomicLong retainedBytes) {
+        this.jpeg = jpeg;
+        this.size = jpeg.length;
+        this.retainedBytes = retainedBytes;
+        retainedBytes.addAndGet(size);
+    }
+
+    public FrameHandle retain() {
+        while (true) {
+            int current = references.get();
+            if (current <= 0) {
+                throw new IllegalStateException("Frame is already released");
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return this;
+            }
+        }
+    }
+
+    public void release() {
+        int left = references.decrementAndGet();
+        if (left == 0) {
+            this.jpeg = null;
+            retainedBytes.addAndGet(-size);
+        } else if (left < 0) {
+            throw new IllegalStateException("Frame is released more times than retained");
+        }
+    }
+
+    public byte[] getBytes() {
+        byte[] bytes = jpeg;
+        if (bytes == null) {
+            throw new IllegalStateException("Frame is already released");
+        }
+        return bytes;
+    }
+
+    public BufferedImage decode() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(getBytes()));
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
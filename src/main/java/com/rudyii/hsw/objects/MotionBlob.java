@@ -0,0 +1,16 @@
+package com.rudyii.hsw.objects;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class MotionBlob {
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private int area;
+}
@@ -0,0 +1,24 @@
+package com.rudyii.hsw.objects;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import lombok.Getter;
+
+import java.util.HashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// An event rendered once for the whole fan-out: the FCM "data" member as UTF-8 JSON spliced into every request
+// and retry as is, and the entry pushed to /log
+@Getter
+public class NotificationPayload {
+    private static final Gson GSON = new Gson();
+
+    private final byte[] data;
+    private final HashMap<String, Object> logEntry;
+
+    public NotificationPayload(JsonObject messageData) {
+        this.data = messageData.toString().getBytes(UTF_8);
+        this.logEntry = GSON.fromJson(messageData, HashMap.class);
+    }
+}
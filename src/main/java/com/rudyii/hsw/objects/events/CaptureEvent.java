@@ -1,20 +1,24 @@
 package com.rudyii.hsw.objects.events;
 
+import com.rudyii.hsw.objects.FrameHandle;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 
 @Data
 @Builder
 @AllArgsConstructor
 @EqualsAndHashCode(callSuper = true)
-public class CaptureEvent extends EventBase {
+public class CaptureEvent extends EventBase implements FrameEvent {
     private String cameraName;
     private long eventId;
     private File uploadCandidate;
-    private BufferedImage image;
+    private FrameHandle frame;
+
+    public FrameHandle[] frames() {
+        return new FrameHandle[]{frame};
+    }
 }
@@ -0,0 +1,20 @@
+package com.rudyii.hsw.objects.events;
+
+import com.rudyii.hsw.objects.FrameHandle;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// An event owns one reference to each of its frames. EventService releases it after multicasting,
+// queued deliveries hold their own until the listener returns, listeners keeping a frame longer retain it
+public interface FrameEvent {
+    FrameHandle[] frames();
+
+    default void retainFrames() {
+        Arrays.stream(frames()).filter(Objects::nonNull).forEach(FrameHandle::retain);
+    }
+
+    default void releaseFrames() {
+        Arrays.stream(frames()).filter(Objects::nonNull).forEach(FrameHandle::release);
+    }
+}
@@ -1,18 +1,30 @@
 package com.rudyii.hsw.objects.events;
 
+import com.rudyii.hsw.motion.MotionMask;
+import com.rudyii.hsw.objects.FrameHandle;
+import com.rudyii.hsw.objects.MotionBlob;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
-import java.awt.image.BufferedImage;
+import java.util.List;
 
 @Data
 @Builder
 @AllArgsConstructor
 @EqualsAndHashCode(callSuper = true)
-public class MotionDetectedEvent extends EventBase {
+public class MotionDetectedEvent extends EventBase implements FrameEvent {
     private String cameraName;
     private Integer motionArea;
-    private BufferedImage currentImage, motionObject;
+    private FrameHandle currentFrame;
+    // motion pixels of the detection plane, each covering scale x scale pixels of currentFrame
+    private MotionMask motionMask;
+    private int scale;
+    private List<MotionBlob> blobs;
+    private int detections;
+
+    public FrameHandle[] frames() {
+        return new FrameHandle[]{currentFrame};
+    }
 }
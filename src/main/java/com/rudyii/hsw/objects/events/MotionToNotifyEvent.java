@@ -1,21 +1,25 @@
 package com.rudyii.hsw.objects.events;
 
+import com.rudyii.hsw.objects.FrameHandle;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
-import java.awt.image.BufferedImage;
 import java.net.URL;
 
 @Data
 @Builder
 @AllArgsConstructor
 @EqualsAndHashCode(callSuper = true)
-public class MotionToNotifyEvent extends EventBase {
+public class MotionToNotifyEvent extends EventBase implements FrameEvent {
     private long eventId;
     private URL snapshotUrl;
     private String cameraName;
     private Integer motionArea;
-    private BufferedImage currentImage, motionObject;
+    private FrameHandle currentFrame;
+
+    public FrameHandle[] frames() {
+        return new FrameHandle[]{currentFrame};
+    }
 }
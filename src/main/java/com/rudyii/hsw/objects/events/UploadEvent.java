@@ -1,20 +1,24 @@
 package com.rudyii.hsw.objects.events;
 
+import com.rudyii.hsw.objects.FrameHandle;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
-import java.awt.image.BufferedImage;
 import java.net.URL;
 
 @Data
 @Builder
 @AllArgsConstructor
 @EqualsAndHashCode(callSuper = true)
-public class UploadEvent extends EventBase {
+public class UploadEvent extends EventBase implements FrameEvent {
     private String cameraName;
     private URL videoUrl;
     private String fileName;
-    private BufferedImage image;
+    private FrameHandle frame;
+
+    public FrameHandle[] frames() {
+        return new FrameHandle[]{frame};
+    }
 }
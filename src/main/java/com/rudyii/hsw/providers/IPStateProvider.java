@@ -4,7 +4,6 @@ import com.rudyii.hsw.enums.IPStateEnum;
 import com.rudyii.hsw.objects.events.IPEvent;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
@@ -39,7 +38,6 @@ public class IPStateProvider {
         return masterIpList.stream().anyMatch(ip -> ONLINE.equals(ipStates.get(ip)));
     }
 
-    @Async
     @EventListener(IPEvent.class)
     public void onEvent(IPEvent event) {
         setIPState(event.getIp(), event.getState());
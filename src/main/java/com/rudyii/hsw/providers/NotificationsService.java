@@ -1,13 +1,14 @@
 package com.rudyii.hsw.providers;
 
-import com.google.gson.JsonObject;
 import com.rudyii.hsw.actions.base.ActionsFactory;
 import com.rudyii.hsw.objects.Attachment;
+import com.rudyii.hsw.objects.NotificationPayload;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Map;
 
 @Service
 public class NotificationsService {
@@ -23,7 +24,7 @@ public class NotificationsService {
         actionsFactory.orderMailSenderAction(subject, body, attachments);
     }
 
-    public void sendFcmMessage(String name, String recipientToken, JsonObject messageData) {
-        actionsFactory.orderMessageSendAction(name, recipientToken, messageData);
+    public void sendFcmMessage(Map<String, String> recipients, NotificationPayload payload) {
+        actionsFactory.orderMessageSendAction(recipients, payload);
     }
 }
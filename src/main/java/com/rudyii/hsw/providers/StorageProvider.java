@@ -2,35 +2,83 @@ package com.rudyii.hsw.providers;
 
 import com.google.api.gax.paging.Page;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.*;
 import com.google.common.collect.ImmutableList;
 import com.google.common.net.MediaType;
+import com.rudyii.hsw.enums.UploadLaneEnum;
 import com.rudyii.hsw.services.UuidService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
 public class StorageProvider {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long MAX_BACKOFF = 30000L;
+    private static final int MAX_COMPOSE_SOURCES = 32;
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    private final Storage storage;
     private final Bucket bucket;
+    private final MeterRegistry meterRegistry;
+    private final Map<UploadLaneEnum, Counter> uploadedBytes = new EnumMap<>(UploadLaneEnum.class);
+    private final Counter retriedChunks;
+    private final Counter failedUploads;
+    private final Timer uploads;
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private ExecutorService partsExecutor;
+    private UploadScheduler uploadScheduler;
+
+    @Value("#{hswProperties['upload.chunk.size.kb'] ?: 2048}")
+    private int chunkSizeKb;
+
+    @Value("#{hswProperties['upload.parallel.parts'] ?: 4}")
+    private int parallelParts;
+
+    @Value("#{hswProperties['upload.rate.limit.kb'] ?: 0}")
+    private long rateLimitKb;
+
+    @Value("#{hswProperties['upload.chunk.retry.delay.ms'] ?: 1000}")
+    private long chunkRetryDelay;
 
     @Autowired
-    public StorageProvider(UuidService uuidService) throws IOException {
-        Storage defaultStorage = StorageOptions.newBuilder()
-                .setCredentials(GoogleCredentials.fromStream(this.getClass().getResourceAsStream("/server-global.json")))
+    public StorageProvider(UuidService uuidService, MeterRegistry meterRegistry) throws IOException {
+        this(StorageOptions.newBuilder()
+                .setCredentials(GoogleCredentials.fromStream(StorageProvider.class.getResourceAsStream("/server-global.json")))
                 .setProjectId("complete-home-system")
-                .build().getService();
-        if (defaultStorage.get(uuidService.getServerKey(), Storage.BucketGetOption.fields()) == null) {
+                .build().getService(), uuidService.getServerKey(), meterRegistry);
+    }
+
+    // allows running against a local emulator or a fake Storage
+    StorageProvider(Storage defaultStorage, String bucketName, MeterRegistry meterRegistry) {
+        this.storage = defaultStorage;
+        if (defaultStorage.get(bucketName, Storage.BucketGetOption.fields()) == null) {
             this.bucket = defaultStorage.create(
-                    BucketInfo.newBuilder(uuidService.getServerKey())
+                    BucketInfo.newBuilder(bucketName)
                             .setStorageClass(StorageClass.STANDARD)
                             .setLocation("EUROPE-WEST3")
                             .setLifecycleRules(ImmutableList.of(
@@ -40,18 +88,261 @@ public class StorageProvider {
                             .build());
 
         } else {
-            this.bucket = defaultStorage.get(uuidService.getServerKey());
+            this.bucket = defaultStorage.get(bucketName);
+        }
+
+        this.meterRegistry = meterRegistry;
+        this.retriedChunks = meterRegistry.counter("hsw.storage.retried.chunks");
+        this.failedUploads = meterRegistry.counter("hsw.storage.failed.uploads");
+        this.uploads = meterRegistry.timer("hsw.storage.uploads");
+        meterRegistry.gauge("hsw.storage.pending.bytes", pendingBytes);
+    }
+
+    @PostConstruct
+    public void init() {
+        this.uploadScheduler = new UploadScheduler(rateLimitKb * 1024);
+        for (UploadLaneEnum lane : UploadLaneEnum.values()) {
+            uploadedBytes.put(lane, meterRegistry.counter("hsw.storage.uploaded.bytes", "lane", lane.name()));
+            meterRegistry.gauge("hsw.storage.active.uploads", Tags.of("lane", lane.name()), uploadScheduler, scheduler -> scheduler.getActive(lane));
         }
+
+        this.partsExecutor = Executors.newFixedThreadPool(parallelParts, runnable -> {
+            Thread thread = new Thread(runnable, "upload-part");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    public URL putData(String objectName, MediaType mediaType, byte[] data) {
-        Blob blob = bucket.create(objectName, data, mediaType.type());
-        log.info("Uploaded {}", blob.getBlobId());
-        return blob.signUrl(30, TimeUnit.DAYS);
+    @PreDestroy
+    public void shutdown() {
+        partsExecutor.shutdownNow();
+    }
+
+    public URL putData(String objectName, MediaType mediaType, byte[] data) throws IOException {
+        UploadLaneEnum lane = laneOf(mediaType);
+        uploadScheduler.enter(lane);
+
+        try {
+            uploadScheduler.pace(lane, data.length);
+            Blob blob = bucket.create(objectName, data, mediaType.type());
+            uploadedBytes.get(lane).increment(data.length);
+            log.info("Uploaded {}", blob.getBlobId());
+            return blob.signUrl(30, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to upload " + objectName, e);
+        } finally {
+            uploadScheduler.exit(lane);
+        }
+    }
+
+    public URL putData(String objectName, MediaType mediaType, InputStream data) throws IOException {
+        BlobInfo blobInfo = BlobInfo.newBuilder(bucket.getName(), objectName).setContentType(mediaType.type()).build();
+        UploadLaneEnum lane = laneOf(mediaType);
+        long started = System.nanoTime();
+        uploadScheduler.enter(lane);
+
+        try {
+            upload(blobInfo, lane, (buffer, position) -> {
+                int read = data.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (read > 0) {
+                    buffer.position(buffer.position() + read);
+                }
+                return read;
+            }, Long.MAX_VALUE);
+        } catch (IOException | StorageException e) {
+            failedUploads.increment();
+            throw e;
+        } finally {
+            uploadScheduler.exit(lane);
+            uploads.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        return signedUrlOf(blobInfo.getBlobId());
+    }
+
+    // big files are sent as parallel resumable uploads of temporary parts composed into the final object
+    public URL putData(String objectName, MediaType mediaType, File file) throws IOException {
+        BlobInfo blobInfo = BlobInfo.newBuilder(bucket.getName(), objectName).setContentType(mediaType.type()).build();
+        long size = file.length();
+        long chunkSize = chunkSize();
+        // parallel parts would only burst side by side under a rate cap
+        int maxParts = rateLimitKb > 0 ? 1 : Math.min(parallelParts, MAX_COMPOSE_SOURCES);
+        int parts = (int) Math.min(maxParts, Math.max(1, size / (chunkSize * 2)));
+        UploadLaneEnum lane = laneOf(mediaType);
+        long started = System.nanoTime();
+        pendingBytes.addAndGet(size);
+        uploadScheduler.enter(lane);
+
+        try {
+            if (parts == 1) {
+                uploadRange(blobInfo, lane, file, 0, size);
+            } else {
+                uploadParts(blobInfo, lane, file, size, parts);
+            }
+        } catch (IOException | StorageException e) {
+            failedUploads.increment();
+            throw e;
+        } finally {
+            uploadScheduler.exit(lane);
+            pendingBytes.addAndGet(-size);
+            uploads.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        return signedUrlOf(blobInfo.getBlobId());
+    }
+
+    private UploadLaneEnum laneOf(MediaType mediaType) {
+        return mediaType.is(MediaType.ANY_IMAGE_TYPE) ? UploadLaneEnum.SNAPSHOT : UploadLaneEnum.VIDEO;
+    }
+
+    private void uploadParts(BlobInfo blobInfo, UploadLaneEnum lane, File file, long size, int parts) throws IOException {
+        long partSize = (size + parts - 1) / parts;
+        List<String> partNames = new ArrayList<>();
+        List<Future<?>> uploadedParts = new ArrayList<>();
+
+        for (int part = 0; part < parts; part++) {
+            long from = part * partSize;
+            long to = Math.min(size, from + partSize);
+            BlobInfo partInfo = BlobInfo.newBuilder(bucket.getName(), blobInfo.getName() + ".part" + part).build();
+            partNames.add(partInfo.getName());
+            uploadedParts.add(partsExecutor.submit(() -> {
+                uploadRange(partInfo, lane, file, from, to);
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> uploadedPart : uploadedParts) {
+                uploadedPart.get();
+            }
+
+            storage.compose(Storage.ComposeRequest.newBuilder()
+                    .addSource(partNames)
+                    .setTarget(blobInfo)
+                    .build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading parts of " + blobInfo.getName(), e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to upload parts of " + blobInfo.getName(), e.getCause());
+        } finally {
+            uploadedParts.forEach(uploadedPart -> uploadedPart.cancel(true));
+            partNames.forEach(partName -> {
+                try {
+                    storage.delete(bucket.getName(), partName);
+                } catch (StorageException e) {
+                    log.warn("Failed to delete upload part {}", partName, e);
+                }
+            });
+        }
+    }
+
+    private void uploadRange(BlobInfo blobInfo, UploadLaneEnum lane, File file, long from, long to) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            upload(blobInfo, lane, (buffer, position) -> {
+                long remaining = to - from - position;
+                if (remaining <= 0) {
+                    return -1;
+                }
+                if (buffer.remaining() > remaining) {
+                    buffer.limit(buffer.position() + (int) remaining);
+                }
+                return channel.read(buffer, from + position);
+            }, to - from);
+        }
+    }
+
+    // every chunk is written from a captured channel state, so a failed chunk is resent from there instead of the start
+    private void upload(BlobInfo blobInfo, UploadLaneEnum lane, ChunkSource source, long length) throws IOException {
+        int chunkSize = chunkSize();
+        ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+        WriteChannel writer = storage.writer(blobInfo);
+        writer.setChunkSize(chunkSize);
+        long position = 0;
+
+        try {
+            while (position < length) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                if (!buffer.hasRemaining()) {
+                    break;
+                }
+
+                int chunk = buffer.remaining();
+                pace(lane, chunk, blobInfo);
+                writer = writeChunk(writer, buffer, blobInfo);
+                position += chunk;
+                uploadedBytes.get(lane).increment(chunk);
+            }
+        } finally {
+            writer.close();
+        }
+
+        log.info("Uploaded {} ({} bytes) with resumable session", blobInfo.getName(), position);
     }
 
-    public URL putData(String objectName, MediaType mediaType, InputStream data) {
-        Blob blob = bucket.create(objectName, data, mediaType.type());
+    // a chunk leaves in one request at line speed, under a rate cap it is held to one second of the cap,
+    // rounded down to the 256 KB resumable upload granularity
+    private int chunkSize() {
+        int chunkSize = chunkSizeKb * 1024;
+        if (rateLimitKb > 0) {
+            long burst = rateLimitKb * 1024 / MIN_CHUNK_SIZE * MIN_CHUNK_SIZE;
+            chunkSize = (int) Math.min(chunkSize, Math.max(MIN_CHUNK_SIZE, burst));
+        }
+        return chunkSize;
+    }
+
+    private WriteChannel writeChunk(WriteChannel writer, ByteBuffer buffer, BlobInfo blobInfo) throws IOException {
+        RestorableState<WriteChannel> state = writer.capture();
+        long backoff = chunkRetryDelay;
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                buffer.rewind();
+                while (buffer.hasRemaining()) {
+                    writer.write(buffer);
+                }
+                return writer;
+            } catch (IOException | StorageException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw new IOException("Failed to upload chunk of " + blobInfo.getName() + " after " + attempt + " attempts", e);
+                }
+
+                log.warn("Chunk upload of {} failed on attempt {}, retrying in {}ms: {}", blobInfo.getName(), attempt, backoff, e.getMessage());
+                retriedChunks.increment();
+                sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+                writer = state.restore();
+            }
+        }
+    }
+
+    private void pace(UploadLaneEnum lane, int bytes, BlobInfo blobInfo) throws IOException {
+        try {
+            uploadScheduler.pace(lane, bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to upload " + blobInfo.getName(), e);
+        }
+    }
+
+    private void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during upload backoff", e);
+        }
+    }
+
+    private URL signedUrlOf(BlobId blobId) {
+        Blob blob = storage.get(blobId);
         log.info("Uploaded {}", blob.getBlobId());
         return blob.signUrl(30, TimeUnit.DAYS);
     }
@@ -68,4 +359,8 @@ public class StorageProvider {
 
         return blobs;
     }
+
+    private interface ChunkSource {
+        int read(ByteBuffer buffer, long position) throws IOException;
+    }
 }
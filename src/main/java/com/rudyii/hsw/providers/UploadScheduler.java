@@ -0,0 +1,58 @@
+package com.rudyii.hsw.providers;
+
+import com.rudyii.hsw.enums.UploadLaneEnum;
+
+import static com.rudyii.hsw.enums.UploadLaneEnum.SNAPSHOT;
+
+// Token bucket shared by all uploads, refilled at the configured rate with one second of burst.
+// Snapshots take their tokens right away, even into debt, videos wait for snapshots in flight and for the debt to be paid
+public class UploadScheduler {
+    private final long bytesPerSecond;
+    private final int[] active = new int[UploadLaneEnum.values().length];
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public UploadScheduler(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+    }
+
+    public synchronized void enter(UploadLaneEnum lane) {
+        active[lane.ordinal()]++;
+    }
+
+    public synchronized void exit(UploadLaneEnum lane) {
+        active[lane.ordinal()]--;
+        notifyAll();
+    }
+
+    public synchronized void pace(UploadLaneEnum lane, int bytes) throws InterruptedException {
+        if (lane != SNAPSHOT) {
+            while (active[SNAPSHOT.ordinal()] > 0) {
+                wait();
+            }
+        }
+
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+
+        refill();
+        while (lane != SNAPSHOT && tokens < 0) {
+            wait(Math.max(1, (long) (-tokens * 1000 / bytesPerSecond)));
+            refill();
+        }
+
+        tokens -= bytes;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+        lastRefill = now;
+    }
+
+    public synchronized int getActive(UploadLaneEnum lane) {
+        return active[lane.ordinal()];
+    }
+}
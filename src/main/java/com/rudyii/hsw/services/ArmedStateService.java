@@ -7,7 +7,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -70,7 +69,6 @@ public class ArmedStateService {
         log.info("System " + ARMED);
     }
 
-    @Async
     @EventListener(ArmedEvent.class)
     public void onEvent(ArmedEvent event) {
         if (event.getArmedMode().equals(MANUAL) && event.getArmedState().equals(ARMED)) {
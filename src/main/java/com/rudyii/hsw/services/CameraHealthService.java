@@ -1,6 +1,10 @@
 package com.rudyii.hsw.services;
 
 import com.rudyii.hsw.motion.Camera;
+import com.rudyii.hsw.motion.FrameDecoder;
+import com.rudyii.hsw.motion.FrameDecoderFactory;
+import com.rudyii.hsw.motion.FramePool;
+import com.rudyii.hsw.motion.LumaFrame;
 import com.rudyii.hsw.objects.events.CameraRebootEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.SystemUtils;
@@ -9,8 +13,8 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
 import java.io.File;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,13 +25,15 @@ public class CameraHealthService {
     private final EventService eventService;
     private final ThreadPoolTaskExecutor hswExecutor;
     private final List<Camera> cameras;
+    private final FrameDecoderFactory frameDecoderFactory;
 
     @Autowired
     public CameraHealthService(EventService eventService, ThreadPoolTaskExecutor hswExecutor,
-                               List<Camera> cameras) {
+                               List<Camera> cameras, FrameDecoderFactory frameDecoderFactory) {
         this.eventService = eventService;
         this.hswExecutor = hswExecutor;
         this.cameras = cameras;
+        this.frameDecoderFactory = frameDecoderFactory;
     }
 
     @Scheduled(initialDelayString = "10000", fixedDelayString = "600000")
@@ -100,8 +106,16 @@ public class CameraHealthService {
 
     }
 
+    // the smallest luma decode the decoder offers is enough to prove the camera serves a valid JPEG
     private void imageProbe(String jpegUrl, String cameraName) throws Exception {
-        ImageIO.read(new URL(jpegUrl));
+        byte[] snapshot;
+        try (InputStream in = new URL(jpegUrl).openStream()) {
+            snapshot = in.readAllBytes();
+        }
+
+        try (FrameDecoder decoder = frameDecoderFactory.newDecoder()) {
+            decoder.decodeLuma(snapshot, 0, snapshot.length, 1, new LumaFrame(), new FramePool());
+        }
         log.info("Image probe success on camera {}", cameraName);
     }
 
@@ -5,7 +5,6 @@ import com.rudyii.hsw.objects.events.CameraRebootEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
@@ -27,7 +26,6 @@ public class CameraRebootService {
         this.hswExecutor = hswExecutor;
     }
 
-    @Async
     @EventListener(CameraRebootEvent.class)
     public void performRebootBy(CameraRebootEvent event) {
         cameras.forEach(camera -> {
@@ -0,0 +1,244 @@
+package com.rudyii.hsw.services;
+
+import com.rudyii.hsw.enums.EventDropPolicyEnum;
+import com.rudyii.hsw.objects.events.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.PayloadApplicationEvent;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.core.ResolvableType;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.rudyii.hsw.enums.EventDropPolicyEnum.*;
+
+// Every listener of home system events gets its own queue drained by its own thread, so a slow listener only
+// delays itself and publishers never wait. When a queue is full the event type decides what is lost: stale probes and
+// motion frames give way to newer ones of the same type, repeated notifications are dropped on arrival.
+// State changes (KEEP) are never dropped and may grow a queue past its capacity, that excess is reported as
+// hsw.events.queue.overflow. Spring's own events are still delivered on the publishing thread
+@Slf4j
+public class EventBusMulticaster extends SimpleApplicationEventMulticaster implements SmartInitializingSingleton {
+    private static final Map<Class<?>, EventDropPolicyEnum> DROP_POLICIES = new HashMap<>();
+
+    static {
+        DROP_POLICIES.put(IPEvent.class, DROP_OLDEST);
+        DROP_POLICIES.put(IspEvent.class, DROP_OLDEST);
+        DROP_POLICIES.put(MotionDetectedEvent.class, DROP_OLDEST);
+        DROP_POLICIES.put(MotionToNotifyEvent.class, DROP_NEWEST);
+        DROP_POLICIES.put(SimpleWatcherEvent.class, DROP_NEWEST);
+    }
+
+    private final Map<ApplicationListener<?>, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Counter> dropped = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberIds = new AtomicInteger();
+    private volatile MeterRegistry meterRegistry;
+    private ConfigurableListableBeanFactory beanFactory;
+    private int queueCapacity = 100;
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        super.setBeanFactory(beanFactory);
+        if (beanFactory instanceof ConfigurableListableBeanFactory) {
+            this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+        }
+    }
+
+    // the registry is looked up once all singletons exist, the multicaster itself is created before any of them
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (beanFactory != null) {
+            this.meterRegistry = beanFactory.getBeanProvider(MeterRegistry.class).getIfAvailable();
+            subscribers.values().forEach(Subscriber::registerGauge);
+        }
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+        ResolvableType type = eventType != null ? eventType : ResolvableType.forInstance(event);
+        Object payload = payloadOf(event);
+
+        for (ApplicationListener<?> listener : getApplicationListeners(event, type)) {
+            if (payload instanceof EventBase) {
+                subscribers.computeIfAbsent(listener, Subscriber::new).offer(event, payload);
+            } else {
+                invokeListener(listener, event);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.values().forEach(Subscriber::stop);
+    }
+
+    private static EventDropPolicyEnum dropPolicyOf(Object payload) {
+        return DROP_POLICIES.getOrDefault(payload.getClass(), KEEP);
+    }
+
+    private static Object payloadOf(ApplicationEvent event) {
+        return event instanceof PayloadApplicationEvent ? ((PayloadApplicationEvent<?>) event).getPayload() : event;
+    }
+
+    private void countDropped(Object payload, String listenerName) {
+        log.warn("Event queue of {} is full, dropped {}", listenerName, payload.getClass().getSimpleName());
+
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            dropped.computeIfAbsent(payload.getClass(), type -> registry.counter("hsw.events.dropped", "event", type.getSimpleName())).increment();
+        }
+    }
+
+    private static String nameOf(ApplicationListener<?> listener) {
+        String description = listener.toString();
+        int arguments = description.indexOf('(');
+        if (arguments < 0) {
+            return listener.getClass().getSimpleName();
+        }
+
+        // ApplicationListenerMethodAdapter describes itself by the listener method, keep Class.method
+        String method = description.substring(0, arguments);
+        int methodDot = method.lastIndexOf('.');
+        int classDot = method.lastIndexOf('.', methodDot - 1);
+        return method.substring(classDot + 1);
+    }
+
+    private final class Subscriber implements Runnable {
+        private final ApplicationListener<?> listener;
+        private final String name;
+        private final Deque<ApplicationEvent> queue = new ArrayDeque<>();
+        private final Thread worker;
+        private volatile boolean running = true;
+
+        private Subscriber(ApplicationListener<?> listener) {
+            this.listener = listener;
+            this.name = nameOf(listener) + "#" + subscriberIds.incrementAndGet();
+            this.worker = new Thread(this, "event-" + name);
+            worker.setDaemon(true);
+            worker.start();
+            registerGauge();
+        }
+
+        private void registerGauge() {
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                registry.gauge("hsw.events.queue.depth", Tags.of("listener", name), this, Subscriber::depth);
+                registry.gauge("hsw.events.queue.overflow", Tags.of("listener", name), this, Subscriber::overflow);
+            }
+        }
+
+        private synchronized int depth() {
+            return queue.size();
+        }
+
+        private synchronized int overflow() {
+            return Math.max(0, queue.size() - queueCapacity);
+        }
+
+        private void offer(ApplicationEvent event, Object payload) {
+            Object lost = null;
+
+            synchronized (this) {
+                if (queue.size() >= queueCapacity) {
+                    switch (dropPolicyOf(payload)) {
+                        case DROP_NEWEST:
+                            lost = payload;
+                            break;
+                        case DROP_OLDEST:
+                            lost = evictOldestOf(payload.getClass());
+                            if (lost == null) {
+                                lost = payload;
+                            }
+                            break;
+                        default:
+                            if (queue.size() == queueCapacity) {
+                                log.warn("Event queue of {} is full, keeping {} past its capacity", name, payload.getClass().getSimpleName());
+                            }
+                            break;
+                    }
+                }
+
+                if (lost != payload) {
+                    if (payload instanceof FrameEvent) {
+                        ((FrameEvent) payload).retainFrames();
+                    }
+                    queue.addLast(event);
+                    notifyAll();
+                }
+            }
+
+            if (lost != null) {
+                countDropped(lost, name);
+                if (lost != payload && lost instanceof FrameEvent) {
+                    ((FrameEvent) lost).releaseFrames();
+                }
+            }
+        }
+
+        // a stale event only ever makes room for a newer one of its own type
+        private Object evictOldestOf(Class<?> type) {
+            Iterator<ApplicationEvent> queued = queue.iterator();
+            while (queued.hasNext()) {
+                Object payload = payloadOf(queued.next());
+                if (payload.getClass() == type) {
+                    queued.remove();
+                    return payload;
+                }
+            }
+            return null;
+        }
+
+        private synchronized ApplicationEvent take() throws InterruptedException {
+            while (queue.isEmpty()) {
+                wait();
+            }
+            return queue.pollFirst();
+        }
+
+        private void stop() {
+            this.running = false;
+            worker.interrupt();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                ApplicationEvent event;
+                try {
+                    event = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                try {
+                    invokeListener(listener, event);
+                } catch (Exception e) {
+                    log.error("Listener {} failed", name, e);
+                } finally {
+                    Object payload = payloadOf(event);
+                    if (payload instanceof FrameEvent) {
+                        ((FrameEvent) payload).releaseFrames();
+                    }
+                }
+            }
+        }
+    }
+}
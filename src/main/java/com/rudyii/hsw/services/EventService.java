@@ -1,6 +1,7 @@
 package com.rudyii.hsw.services;
 
 import com.rudyii.hsw.objects.events.EventBase;
+import com.rudyii.hsw.objects.events.FrameEvent;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
@@ -17,5 +18,9 @@ public class EventService implements ApplicationEventPublisherAware {
 
     public void publish(EventBase event) {
         publisher.publishEvent(event);
+
+        if (event instanceof FrameEvent) {
+            ((FrameEvent) event).releaseFrames();
+        }
     }
 }
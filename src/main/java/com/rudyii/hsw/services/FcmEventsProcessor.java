@@ -4,12 +4,12 @@ import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.ValueEventListener;
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.rudyii.hsw.database.FirebaseDatabaseProvider;
 import com.rudyii.hsw.enums.ArmedModeEnum;
 import com.rudyii.hsw.enums.ArmedStateEnum;
 import com.rudyii.hsw.helpers.Uptime;
+import com.rudyii.hsw.objects.NotificationPayload;
 import com.rudyii.hsw.objects.WanIp;
 import com.rudyii.hsw.objects.events.*;
 import com.rudyii.hsw.providers.NotificationsService;
@@ -26,6 +26,8 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -145,11 +147,11 @@ public class FcmEventsProcessor {
 
     @PreDestroy
     private void destroy() {
-        JsonObject jsonObject = getStartStopJsonObject(STOPPED);
+        NotificationPayload payload = new NotificationPayload(getStartStopJsonObject(STOPPED));
 
-        sendFcmMessage(jsonObject, ALL);
+        sendFcmMessage(payload, ALL);
 
-        firebaseDatabaseProvider.pushData("/log/" + System.currentTimeMillis(), new Gson().fromJson(jsonObject, HashMap.class));
+        firebaseDatabaseProvider.pushData("/log/" + System.currentTimeMillis(), payload.getLogEntry());
 
         unregisterListeners();
     }
@@ -159,6 +161,7 @@ public class FcmEventsProcessor {
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty(SERVER_NAME, serverAlias);
         jsonObject.addProperty(EVENT_ID, event.getEventId());
+        String notificationType = ALL;
 
         if (event instanceof ArmedEvent) {
             ArmedEvent armedEvent = (ArmedEvent) event;
@@ -169,8 +172,6 @@ public class FcmEventsProcessor {
             jsonObject.addProperty(ARMED_MODE, armedEvent.getArmedMode().toString());
             jsonObject.addProperty(ARMED_STATE, armedEvent.getArmedState().toString());
 
-            sendFcmMessage(jsonObject, ALL);
-
         } else if (event instanceof MotionToNotifyEvent) {
             MotionToNotifyEvent motionToNotifyEvent = (MotionToNotifyEvent) event;
 
@@ -179,8 +180,7 @@ public class FcmEventsProcessor {
             jsonObject.addProperty(TIME_STAMP, motionToNotifyEvent.getEventId());
             jsonObject.addProperty(CAMERA_NAME, motionToNotifyEvent.getCameraName());
             jsonObject.addProperty(MOTION_AREA, motionToNotifyEvent.getMotionArea());
-
-            sendFcmMessage(jsonObject, MOTION_DETECTED);
+            notificationType = MOTION_DETECTED;
 
         } else if (event instanceof UploadEvent) {
             UploadEvent uploadEvent = (UploadEvent) event;
@@ -189,8 +189,7 @@ public class FcmEventsProcessor {
             jsonObject.addProperty(VIDEO_URL, uploadEvent.getVideoUrl().toString());
             jsonObject.addProperty(FILE_NAME, uploadEvent.getFileName());
             jsonObject.addProperty(CAMERA_NAME, uploadEvent.getCameraName());
-
-            sendFcmMessage(jsonObject, VIDEO_RECORDED);
+            notificationType = VIDEO_RECORDED;
 
         } else if (event instanceof IspEvent) {
             refreshWanInfo();
@@ -199,26 +198,23 @@ public class FcmEventsProcessor {
             jsonObject.addProperty(ISP, ispService.getCurrentWanIp().getIsp());
             jsonObject.addProperty(IP, ispService.getCurrentWanIp().getQuery());
 
-            sendFcmMessage(jsonObject, ALL);
-
         } else if (event instanceof CameraRebootEvent) {
             CameraRebootEvent cameraRebootEvent = (CameraRebootEvent) event;
 
             jsonObject.addProperty(REASON, CAMERA_REBOOT);
             jsonObject.addProperty(CAMERA_NAME, cameraRebootEvent.getCameraName());
-
-            sendFcmMessage(jsonObject, ALL);
         } else if (event instanceof SimpleWatcherEvent) {
             SimpleWatcherEvent simpleWatcherEvent = (SimpleWatcherEvent) event;
 
             jsonObject.addProperty(REASON, SIMPLE_NOTIFICATION);
             jsonObject.addProperty(SIMPLE_WATCHER_NOTIFICATION_TEXT_ORIGINAL, simpleWatcherEvent.getNotificationText());
             jsonObject.addProperty(SIMPLE_WATCHER_NOTIFICATION_TEXT_ENCODED, Base64.getEncoder().encodeToString(simpleWatcherEvent.getNotificationText().getBytes(StandardCharsets.UTF_8)));
-
-            sendFcmMessage(jsonObject, ALL);
         }
 
-        firebaseDatabaseProvider.pushData("/log/" + event.getEventId(), new Gson().fromJson(jsonObject, HashMap.class));
+        NotificationPayload payload = new NotificationPayload(jsonObject);
+        sendFcmMessage(payload, notificationType);
+
+        firebaseDatabaseProvider.pushData("/log/" + event.getEventId(), payload.getLogEntry());
     }
 
     private void updateStatuses(ArmedStateEnum armedState, ArmedModeEnum armedMode) {
@@ -308,10 +304,11 @@ public class FcmEventsProcessor {
     private void notifyServerStarted() {
         JsonObject jsonObject = getStartStopJsonObject(STARTED);
         jsonObject.addProperty(PID, getPid());
+        NotificationPayload payload = new NotificationPayload(jsonObject);
 
-        sendFcmMessage(jsonObject, ALL);
+        sendFcmMessage(payload, ALL);
 
-        firebaseDatabaseProvider.pushData("/log/" + System.currentTimeMillis(), new Gson().fromJson(jsonObject, HashMap.class));
+        firebaseDatabaseProvider.pushData("/log/" + System.currentTimeMillis(), payload.getLogEntry());
 
         alreadyFired = true;
     }
@@ -326,7 +323,9 @@ public class FcmEventsProcessor {
         return jsonObject;
     }
 
-    private void sendFcmMessage(JsonObject messageData, String notificationType) {
+    private void sendFcmMessage(NotificationPayload payload, String notificationType) {
+        Map<String, String> recipients = new LinkedHashMap<>();
+
         clientsService.getClients().forEach(client -> {
             String clientNotificationType = client.getNotificationType();
             String email = client.getEmail();
@@ -350,11 +349,15 @@ public class FcmEventsProcessor {
 
                 log.info("Ready to send message to the Client:" + email + " on device " + device + " with client version " + appVersion);
 
-                notificationsService.sendFcmMessage(email, token, messageData);
+                recipients.put(token, email);
             } else {
                 log.warn("Client:" + email + " on device " + device + " with client version " + appVersion + " is not interested in such type of notification: server - " + notificationType + ", client - " + clientNotificationType);
             }
         });
+
+        if (!recipients.isEmpty()) {
+            notificationsService.sendFcmMessage(recipients, payload);
+        }
     }
 
     private boolean tokenLooksGood(String token) {
@@ -14,9 +14,8 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -68,14 +67,19 @@ public class ReportingService {
         cameras.forEach(camera -> {
             try {
                 if (camera.getJpegUrl() != null) {
-                    ByteArrayOutputStream currentImageBOS = new ByteArrayOutputStream();
-                    BufferedImage currentImage = ImageIO.read(new URL(camera.getJpegUrl()));
-                    ImageIO.write(currentImage, "jpeg", currentImageBOS);
-                    byte[] currentImageByteArray = currentImageBOS.toByteArray();
+                    byte[] snapshot;
+                    try (InputStream in = new URL(camera.getJpegUrl()).openStream()) {
+                        snapshot = in.readAllBytes();
+                    }
+
+                    // attached as served, only checked to start like a JPEG so a broken camera still gets rebooted
+                    if (snapshot.length < 2 || snapshot[0] != (byte) 0xFF || snapshot[1] != (byte) 0xD8) {
+                        throw new IOException("Snapshot is not a JPEG");
+                    }
 
                     attachments.add(Attachment.builder()
                             .name(camera.getCameraName())
-                            .data(currentImageByteArray)
+                            .data(snapshot)
                             .mimeType("image/jpeg").build());
                 }
             } catch (Exception e) {
@@ -0,0 +1,327 @@
+package com.rudyii.hsw.services;
+
+import com.rudyii.hsw.actions.UploadAction;
+import com.rudyii.hsw.motion.FrameHandleFactory;
+import com.rudyii.hsw.objects.FrameHandle;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Clips are moved into the spool and recorded in UPLOAD_QUEUE before uploading, so they survive restarts and outages.
+// Workers only run while the internet is reachable and exit when the queue is drained, nothing waits in a sleep loop.
+// A failed upload waits an exponential backoff before it is claimed again, a drain is scheduled for when it ends.
+// After upload.max.attempts it is dead lettered into the spool's dead directory
+@Slf4j
+@Service
+public class UploadQueueService {
+    private static final long MAX_RETRY_DELAY = 3600000L;
+
+    private final Connection connection;
+    private final ApplicationContext context;
+    private final IspService ispService;
+    private final FrameHandleFactory frameHandleFactory;
+    private final Set<Long> inProgress = new HashSet<>();
+    private final Map<Long, Long> retryAt = new HashMap<>();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    private volatile boolean online = true;
+    private ExecutorService workers;
+    private ScheduledExecutorService retryScheduler;
+
+    @Value("#{hswProperties['upload.workers'] ?: 2}")
+    private int workersCount;
+
+    @Value("#{hswProperties['upload.spool.dir'] ?: 'spool'}")
+    private String spoolDir;
+
+    @Value("#{hswProperties['upload.max.attempts'] ?: 10}")
+    private int maxAttempts;
+
+    @Value("#{hswProperties['upload.retry.delay.ms'] ?: 30000}")
+    private long retryDelay;
+
+    @Autowired
+    public UploadQueueService(Connection connection, ApplicationContext context, IspService ispService,
+                              FrameHandleFactory frameHandleFactory) {
+        this.connection = connection;
+        this.context = context;
+        this.ispService = ispService;
+        this.frameHandleFactory = frameHandleFactory;
+    }
+
+    @PostConstruct
+    public void init() {
+        new File(spoolDir).mkdirs();
+        this.workers = Executors.newFixedThreadPool(workersCount, runnable -> {
+            Thread thread = new Thread(runnable, "upload-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        log.info("Upload queue started with {} pending uploads", pendingUploads());
+        drain();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    // the frame reference is released once its JPEG is spooled
+    public void enqueue(String cameraName, File uploadCandidate, FrameHandle frame) {
+        try {
+            File clip = new File(spoolDir, uploadCandidate.getName());
+            Files.move(uploadCandidate.toPath(), clip.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            File imageFile = null;
+            if (frame != null) {
+                imageFile = new File(spoolDir, uploadCandidate.getName() + ".jpg");
+                Files.write(imageFile.toPath(), frame.getBytes());
+            }
+
+            insert(cameraName, clip, imageFile);
+            log.info("Queued upload of {}", clip.getAbsolutePath());
+        } catch (IOException | SQLException e) {
+            log.error("Failed to queue upload of {}", uploadCandidate.getAbsolutePath(), e);
+            return;
+        } finally {
+            if (frame != null) {
+                frame.release();
+            }
+        }
+
+        drain();
+    }
+
+    @Scheduled(initialDelayString = "30000", fixedDelayString = "30000")
+    public void checkConnectivity() {
+        boolean wasOnline = online;
+        this.online = ispService.internetIsAvailable();
+
+        if (online && !wasOnline) {
+            log.info("Internet is available again, resuming uploads");
+        }
+        if (online) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        if (!online) {
+            return;
+        }
+
+        drainRequested.set(true);
+        int active;
+        while ((active = activeWorkers.get()) < workersCount) {
+            if (activeWorkers.compareAndSet(active, active + 1)) {
+                workers.submit(this::work);
+            }
+        }
+    }
+
+    private void work() {
+        try {
+            QueuedUpload upload;
+            while (online && (upload = nextUpload()) != null) {
+                boolean uploaded = false;
+                try {
+                    uploaded = upload(upload);
+                } catch (RuntimeException e) {
+                    log.error("Upload of {} failed", upload.filePath, e);
+                } finally {
+                    if (uploaded) {
+                        complete(upload);
+                    } else {
+                        release(upload);
+                    }
+                }
+
+                if (!uploaded) {
+                    this.online = ispService.internetIsAvailable();
+                    log.warn("Upload of {} failed, {}", upload.filePath, online ? "retrying after backoff" : "internet is unavailable, uploads paused");
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Upload queue failure", e);
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+
+        // a drain between the last claim and the decrement still counted this worker and started none
+        if (drainRequested.get()) {
+            drain();
+        }
+    }
+
+    private QueuedUpload nextUpload() throws SQLException {
+        drainRequested.set(false);
+        return claim();
+    }
+
+    private boolean upload(QueuedUpload upload) {
+        File clip = new File(upload.filePath);
+        if (!clip.exists()) {
+            log.warn("Queued file {} no longer exists, dropping", upload.filePath);
+            return true;
+        }
+
+        // the action is created first, once it holds the frame it releases it on every outcome
+        UploadAction action = context.getBean(UploadAction.class)
+                .withUploadCandidate(clip)
+                .withCameraName(upload.cameraName);
+
+        FrameHandle frame = null;
+        if (upload.imagePath != null) {
+            try {
+                frame = frameHandleFactory.wrap(upload.cameraName, Files.readAllBytes(new File(upload.imagePath).toPath()));
+            } catch (IOException e) {
+                log.warn("Failed to read queued image {}", upload.imagePath, e);
+            }
+        }
+
+        return action.andFrame(frame).uploadFile();
+    }
+
+    private synchronized void insert(String cameraName, File clip, File image) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT OR REPLACE INTO UPLOAD_QUEUE (CAMERA_NAME, FILE_PATH, IMAGE_PATH, ATTEMPTS, CREATED) VALUES (?, ?, ?, 0, ?)")) {
+            statement.setString(1, cameraName);
+            statement.setString(2, clip.getAbsolutePath());
+            statement.setString(3, image == null ? null : image.getAbsolutePath());
+            statement.setLong(4, System.currentTimeMillis());
+            statement.executeUpdate();
+        }
+    }
+
+    private synchronized QueuedUpload claim() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT ID, CAMERA_NAME, FILE_PATH, IMAGE_PATH, ATTEMPTS FROM UPLOAD_QUEUE ORDER BY ATTEMPTS, ID")) {
+            ResultSet rs = statement.executeQuery();
+            long now = System.nanoTime();
+            while (rs.next()) {
+                long id = rs.getLong(1);
+                Long readyAt = retryAt.get(id);
+                if ((readyAt == null || readyAt - now <= 0) && inProgress.add(id)) {
+                    return new QueuedUpload(id, rs.getString(2), rs.getString(3), rs.getString(4), rs.getInt(5));
+                }
+            }
+        }
+        return null;
+    }
+
+    private synchronized void complete(QueuedUpload upload) throws SQLException {
+        try {
+            delete(upload);
+        } finally {
+            inProgress.remove(upload.id);
+            retryAt.remove(upload.id);
+        }
+
+        if (upload.imagePath != null) {
+            new File(upload.imagePath).delete();
+        }
+    }
+
+    private synchronized void release(QueuedUpload upload) throws SQLException {
+        try {
+            int attempts = upload.attempts + 1;
+            if (attempts >= maxAttempts) {
+                deadLetter(upload, attempts);
+                return;
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE UPLOAD_QUEUE SET ATTEMPTS = ? WHERE ID = ?")) {
+                statement.setInt(1, attempts);
+                statement.setLong(2, upload.id);
+                statement.executeUpdate();
+            }
+            // on the scheduler's clock, so the drain never runs before the upload is ready
+            long delay = Math.min(MAX_RETRY_DELAY, retryDelay << Math.min(attempts - 1, 16));
+            retryAt.put(upload.id, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+            if (!retryScheduler.isShutdown()) {
+                retryScheduler.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            inProgress.remove(upload.id);
+        }
+    }
+
+    private void deadLetter(QueuedUpload upload, int attempts) throws SQLException {
+        File deadDir = new File(spoolDir, "dead");
+        deadDir.mkdirs();
+        for (String path : new String[]{upload.filePath, upload.imagePath}) {
+            File file = path == null ? null : new File(path);
+            if (file != null && file.exists() && !file.renameTo(new File(deadDir, file.getName()))) {
+                log.warn("Failed to move {} aside", path);
+            }
+        }
+
+        delete(upload);
+        retryAt.remove(upload.id);
+        log.error("Dead letter: upload of {} dropped after {} attempts, moved to {}", upload.filePath, attempts, deadDir.getAbsolutePath());
+    }
+
+    private void delete(QueuedUpload upload) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM UPLOAD_QUEUE WHERE ID = ?")) {
+            statement.setLong(1, upload.id);
+            statement.executeUpdate();
+        }
+    }
+
+    private synchronized int pendingUploads() {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM UPLOAD_QUEUE")) {
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            log.error("Failed to count queued uploads", e);
+            return 0;
+        }
+    }
+
+    private static final class QueuedUpload {
+        private final long id;
+        private final String cameraName;
+        private final String filePath;
+        private final String imagePath;
+        private final int attempts;
+
+        private QueuedUpload(long id, String cameraName, String filePath, String imagePath, int attempts) {
+            this.id = id;
+            this.cameraName = cameraName;
+            this.filePath = filePath;
+            this.imagePath = imagePath;
+            this.attempts = attempts;
+        }
+    }
+}
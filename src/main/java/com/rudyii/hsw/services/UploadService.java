@@ -5,7 +5,6 @@ import com.rudyii.hsw.objects.events.CaptureEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 @Slf4j
@@ -18,12 +17,11 @@ public class UploadService {
         this.actionsFactory = actionsFactory;
     }
 
-    @Async
     @EventListener(CaptureEvent.class)
     public void onEvent(CaptureEvent event) {
         if (event.getUploadCandidate() != null && event.getUploadCandidate().exists()) {
             log.info("Invoking upload process for file: {}", event.getUploadCandidate().getAbsolutePath());
-            actionsFactory.orderUploadAction(event.getCameraName(), event.getUploadCandidate(), event.getImage());
+            actionsFactory.orderUploadAction(event.getCameraName(), event.getUploadCandidate(), event.getFrame() == null ? null : event.getFrame().retain());
 
         } else {
             log.warn("File: {} does not exist. Uploading skipped", event.getUploadCandidate());
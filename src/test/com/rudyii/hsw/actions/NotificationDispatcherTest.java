@@ -0,0 +1,89 @@
+package com.rudyii.hsw.actions;
+
+import com.google.gson.JsonObject;
+import com.rudyii.hsw.enums.FcmMessageEnum;
+import com.rudyii.hsw.helpers.FCMSender;
+import com.rudyii.hsw.objects.NotificationPayload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.rudyii.hsw.enums.FcmMessageEnum.SUCCESS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class NotificationDispatcherTest {
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final BlockingQueue<List<String>> sends = new LinkedBlockingQueue<>();
+    private final BlockingQueue<List<FcmMessageEnum>> answers = new LinkedBlockingQueue<>();
+    private final NotificationDispatcher dispatcher;
+
+    public NotificationDispatcherTest() {
+        FCMSender fcmSender = new FCMSender() {
+            @Override
+            public CompletableFuture<List<FcmMessageEnum>> sendData(List<String> recipientTokens, NotificationPayload payload) {
+                sends.add(new ArrayList<>(recipientTokens));
+                List<FcmMessageEnum> answer = answers.poll();
+                return CompletableFuture.completedFuture(answer == null ? Collections.emptyList() : answer);
+            }
+        };
+
+        dispatcher = new NotificationDispatcher(fcmSender, null, null);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(dispatcher, "retryDelay", 1L);
+        dispatcher.init();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void onlyRecipientsWithoutResultsAreRetried() throws Exception {
+        answers.add(Collections.singletonList(SUCCESS));
+        answers.add(Collections.singletonList(SUCCESS));
+
+        dispatcher.dispatchFcm(recipients("alice-token", "bob-token"), payload());
+
+        assertEquals(Arrays.asList("alice-token", "bob-token"), sends.poll(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("bob-token"), sends.poll(5, TimeUnit.SECONDS));
+        assertNull(sends.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void recipientWithoutResultsIsDroppedAfterMaxAttempts() throws Exception {
+        dispatcher.dispatchFcm(recipients("alice-token"), payload());
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            assertEquals(Collections.singletonList("alice-token"), sends.poll(5, TimeUnit.SECONDS), "attempt " + attempt);
+        }
+        assertNull(sends.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private static Map<String, String> recipients(String... tokens) {
+        Map<String, String> recipients = new LinkedHashMap<>();
+        for (String token : tokens) {
+            recipients.put(token, token.replace("-token", ""));
+        }
+        return recipients;
+    }
+
+    private static NotificationPayload payload() {
+        JsonObject data = new JsonObject();
+        data.addProperty("eventType", "SYSTEM_STATE_CHANGED");
+        return new NotificationPayload(data);
+    }
+}
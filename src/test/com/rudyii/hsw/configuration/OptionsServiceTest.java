@@ -0,0 +1,87 @@
+package com.rudyii.hsw.configuration;
+
+import com.rudyii.hsw.enums.DetectionModeEnum;
+import com.rudyii.hsw.motion.Camera;
+import com.rudyii.hsw.objects.CameraDetectionSettings;
+import com.rudyii.hsw.objects.events.EventBase;
+import com.rudyii.hsw.services.EventService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.rudyii.hsw.configuration.OptionsService.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class OptionsServiceTest {
+    private OptionsService optionsService;
+
+    @BeforeEach
+    public void setUp() {
+        EventService eventService = new EventService() {
+            @Override
+            public void publish(EventBase event) {
+            }
+        };
+
+        optionsService = new OptionsService(eventService, null, Arrays.asList(camera("Front"), camera("Back")));
+        optionsService.loadLocalOptions();
+    }
+
+    @Test
+    public void cloudValuesOfAnyNumberTypeAreApplied() {
+        Map<String, Object> options = optionsService.getCameraOptions("Front");
+        options.put(INTERVAL, 750.0);
+        options.put(NOISE_LEVEL, "12");
+        options.put(DETECTION_MODE, "background_model");
+        options.put(IGNORE_REGIONS, "0,0 10,0 10,10");
+        optionsService.rebuildDetectionSettings();
+
+        CameraDetectionSettings settings = optionsService.getDetectionSettings("Front");
+        assertEquals(750L, settings.getInterval());
+        assertEquals(12, settings.getNoiseLevel());
+        assertEquals(DetectionModeEnum.BACKGROUND_MODEL, settings.getDetectionMode());
+        assertEquals("0,0 10,0 10,10", settings.getIgnoreRegions());
+    }
+
+    @Test
+    public void invalidCloudValuesKeepTheCurrentSettings() {
+        Map<String, Object> options = optionsService.getCameraOptions("Front");
+        options.put(INTERVAL, 750L);
+        optionsService.rebuildDetectionSettings();
+
+        options.put(INTERVAL, "often");
+        options.put(NOISE_LEVEL, true);
+        options.put(DETECTION_MODE, "MOTION_BLUR");
+        options.put(MIN_BLOB_AREA, "12px");
+        options.put(IGNORE_REGIONS, 42L);
+        options.put(MOTION_AREA, 30L);
+        optionsService.rebuildDetectionSettings();
+
+        CameraDetectionSettings settings = optionsService.getDetectionSettings("Front");
+        assertEquals(750L, settings.getInterval());
+        assertEquals(7, settings.getNoiseLevel());
+        assertEquals(DetectionModeEnum.FRAME_DIFF, settings.getDetectionMode());
+        assertEquals(0L, settings.getMinBlobArea());
+        assertEquals("", settings.getIgnoreRegions());
+        assertEquals(30L, settings.getMotionArea());
+    }
+
+    @Test
+    public void invalidValueOnOneCameraDoesNotAffectTheOthers() {
+        optionsService.getCameraOptions("Front").put(DETECTION_MODE, 1L);
+        optionsService.getCameraOptions("Back").put(NOISE_LEVEL, 20L);
+        optionsService.rebuildDetectionSettings();
+
+        assertEquals(DetectionModeEnum.FRAME_DIFF, optionsService.getDetectionSettings("Front").getDetectionMode());
+        assertEquals(20, optionsService.getDetectionSettings("Back").getNoiseLevel());
+    }
+
+    private static Camera camera(String cameraName) {
+        Camera camera = new Camera(null, null, null, null, null, null);
+        camera.setCameraName(cameraName);
+        camera.setNoiseLevel(7L);
+        return camera;
+    }
+}
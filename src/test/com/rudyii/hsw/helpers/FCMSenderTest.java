@@ -0,0 +1,227 @@
+package com.rudyii.hsw.helpers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.internal.Streams;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.rudyii.hsw.enums.FcmMessageEnum;
+import com.rudyii.hsw.objects.NotificationPayload;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.rudyii.hsw.enums.FcmMessageEnum.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FCMSenderTest {
+    private final List<JsonObject> requests = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer server;
+    private FCMSender fcmSender;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fcm/send", this::handle);
+        server.start();
+
+        fcmSender = new FCMSender();
+        ReflectionTestUtils.setField(fcmSender, "fcmServerKey", "test-key");
+        ReflectionTestUtils.setField(fcmSender, "fcmUrl", "http://127.0.0.1:" + server.getAddress().getPort() + "/fcm/send");
+        ReflectionTestUtils.setField(fcmSender, "maxConnections", 4);
+        ReflectionTestUtils.setField(fcmSender, "timeout", 5000);
+        fcmSender.init();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        fcmSender.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void tokensAreSentInBatchesOfAThousand() throws Exception {
+        List<String> tokens = tokens(2500, "ok");
+
+        List<FcmMessageEnum> results = fcmSender.sendData(tokens, payload()).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Collections.nCopies(2500, SUCCESS), results);
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(3, requests.size());
+
+        List<List<String>> batches = new ArrayList<>();
+        requests.forEach(request -> batches.add(registrationIds(request)));
+        batches.sort(Comparator.comparingInt(batch -> tokens.indexOf(batch.get(0))));
+        assertEquals(tokens.subList(0, 1000), batches.get(0));
+        assertEquals(tokens.subList(1000, 2000), batches.get(1));
+        assertEquals(tokens.subList(2000, 2500), batches.get(2));
+    }
+
+    @Test
+    public void resultsMapBackToTheirRecipients() throws Exception {
+        Map<String, String> recipients = new LinkedHashMap<>();
+        for (int i = 0; i < 1500; i++) {
+            String status = i % 3 == 0 ? "ok" : i % 3 == 1 ? "invalid" : "unavailable";
+            recipients.put(status + "-token-" + i, status + "-client-" + i);
+        }
+        List<String> tokens = new ArrayList<>(recipients.keySet());
+
+        List<FcmMessageEnum> results = fcmSender.sendData(tokens, payload()).get(10, TimeUnit.SECONDS);
+
+        assertEquals(tokens.size(), results.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            String name = recipients.get(tokens.get(i));
+            FcmMessageEnum expected = name.startsWith("ok") ? SUCCESS : name.startsWith("invalid") ? WARNING : FAIL;
+            assertEquals(expected, results.get(i), name);
+        }
+    }
+
+    @Test
+    public void failedBatchOnlyFailsItsOwnTokens() throws Exception {
+        List<String> tokens = tokens(2500, "ok");
+        tokens.set(1500, "down-token-1500");
+
+        List<FcmMessageEnum> results = fcmSender.sendData(tokens, payload()).get(10, TimeUnit.SECONDS);
+
+        assertEquals(2500, results.size());
+        assertEquals(Collections.nCopies(1000, SUCCESS), results.subList(0, 1000));
+        assertEquals(Collections.nCopies(1000, FAIL), results.subList(1000, 2000));
+        assertEquals(Collections.nCopies(500, SUCCESS), results.subList(2000, 2500));
+    }
+
+    @Test
+    public void tokensWithoutResultsAreFailed() throws Exception {
+        List<String> tokens = tokens(3, "ok");
+        tokens.set(0, "short-token-0");
+
+        List<FcmMessageEnum> results = fcmSender.sendData(tokens, payload()).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList(SUCCESS, SUCCESS, FAIL), results);
+    }
+
+    @Test
+    public void splicedDataIsValidJson() throws Exception {
+        JsonObject data = new JsonObject();
+        data.addProperty("eventType", "MOTION_DETECTED");
+        data.addProperty("serverName", "Quote \" backslash \\ and ünïcödé ✓");
+        data.addProperty("motionArea", 42);
+        JsonArray blobs = new JsonArray();
+        blobs.add(1);
+        blobs.add(2);
+        JsonObject nested = new JsonObject();
+        nested.add("blobs", blobs);
+        data.add("details", nested);
+
+        fcmSender.sendData(tokens(1, "ok"), new NotificationPayload(data)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(1, requests.size());
+        assertEquals(data, requests.get(0).get("data"));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = IOUtils.toString(exchange.getRequestBody(), UTF_8);
+        JsonObject request;
+        try {
+            if (!"key=test-key".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                throw new IllegalStateException("Missing server key");
+            }
+            request = strictParse(body);
+        } catch (RuntimeException | IOException e) {
+            failures.add(e + ": " + body);
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        requests.add(request);
+
+        List<String> tokens = registrationIds(request);
+        if (tokens.stream().anyMatch(token -> token.startsWith("down"))) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        JsonArray results = new JsonArray();
+        int success = 0;
+        for (String token : tokens) {
+            JsonObject result = new JsonObject();
+            if (token.startsWith("invalid")) {
+                result.addProperty("error", "InvalidRegistration");
+            } else if (token.startsWith("unavailable")) {
+                result.addProperty("error", "Unavailable");
+            } else {
+                result.addProperty("message_id", "0:" + token);
+                success++;
+            }
+            results.add(result);
+        }
+        // a short answer leaves the last tokens without results
+        if (tokens.get(0).startsWith("short")) {
+            results.remove(results.size() - 1);
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("success", success);
+        response.addProperty("failure", tokens.size() - success);
+        response.add("results", results);
+
+        byte[] bytes = response.toString().getBytes(UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // a lenient parse would accept a body with a broken splice
+    private static JsonObject strictParse(String body) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(body));
+        JsonObject json = Streams.parse(reader).getAsJsonObject();
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new IllegalStateException("Trailing content after the JSON body");
+        }
+        return json;
+    }
+
+    private static List<String> registrationIds(JsonObject request) {
+        List<String> tokens = new ArrayList<>();
+        for (JsonElement token : request.getAsJsonArray("registration_ids")) {
+            tokens.add(token.getAsString());
+        }
+        return tokens;
+    }
+
+    private static List<String> tokens(int count, String status) {
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tokens.add(status + "-token-" + i);
+        }
+        return tokens;
+    }
+
+    private static NotificationPayload payload() {
+        JsonObject data = new JsonObject();
+        data.addProperty("eventType", "SYSTEM_STATE_CHANGED");
+        return new NotificationPayload(data);
+    }
+}
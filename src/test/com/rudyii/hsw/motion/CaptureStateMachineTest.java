@@ -0,0 +1,57 @@
+package com.rudyii.hsw.motion;
+
+import org.junit.jupiter.api.Test;
+
+import static com.rudyii.hsw.enums.CaptureStateEnum.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CaptureStateMachineTest {
+    private final CaptureStateMachine captureState = new CaptureStateMachine();
+
+    @Test
+    public void motionDuringCaptureExtendsIt() {
+        assertTrue(captureState.onMotion(0, 10000));
+        assertFalse(captureState.onMotion(5000, 10000));
+
+        assertEquals(5000, captureState.finishOrExtend(10000, "1.mp4"));
+        assertEquals(0, captureState.finishOrExtend(15000, "1.mp4"));
+        assertEquals(UPLOADING, captureState.getState());
+    }
+
+    @Test
+    public void onlyTheUploadOfTheAwaitedClipEndsUploading() {
+        captureState.onMotion(0, 10000);
+        captureState.finishOrExtend(10000, "2.mp4");
+
+        captureState.uploadFinished("1.mp4", 11000, 0);
+        assertEquals(UPLOADING, captureState.getState());
+
+        captureState.uploadFinished("2.mp4", 12000, 0);
+        assertEquals(IDLE, captureState.getState());
+    }
+
+    @Test
+    public void uploadOfTheAwaitedClipStartsTheCooldown() {
+        long now = System.currentTimeMillis();
+        captureState.onMotion(now, 10000);
+        captureState.finishOrExtend(now + 10000, "1.mp4");
+
+        captureState.uploadFinished("1.mp4", now, 60000);
+        assertEquals(COOLDOWN, captureState.getState());
+        assertFalse(captureState.onMotion(now + 1000, 10000));
+    }
+
+    @Test
+    public void failedCaptureFreesTheCamera() {
+        captureState.onMotion(0, 10000);
+        captureState.captureFailed();
+        assertEquals(IDLE, captureState.getState());
+
+        captureState.onMotion(0, 10000);
+        captureState.finishOrExtend(10000, "1.mp4");
+        captureState.captureFailed();
+        assertEquals(IDLE, captureState.getState());
+    }
+}
@@ -0,0 +1,265 @@
+package com.rudyii.hsw.motion;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_3BYTE_BGR;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FrameDiffEngineTest {
+    private static final int[] WIDTHS = {1, 7, 8, 9, 13, 63, 64, 65, 100, 127, 129};
+    private static final int[] HEIGHTS = {1, 3, 8, 17};
+    private static final int[] NOISE_LEVELS = {0, 1, 20, 128, 254, 255};
+
+    private final ScalarFrameDiffEngine scalarEngine = new ScalarFrameDiffEngine();
+    private final SwarFrameDiffEngine swarEngine = new SwarFrameDiffEngine();
+    private final Random random = new Random(42);
+
+    @Test
+    public void scalarEngineMatchesGetRgbLoop() {
+        for (int type : new int[]{TYPE_3BYTE_BGR, TYPE_INT_RGB}) {
+            for (int width : WIDTHS) {
+                for (int height : HEIGHTS) {
+                    for (int noiseLevel : NOISE_LEVELS) {
+                        BufferedImage previous = colourImage(width, height, type);
+                        BufferedImage current = changed(previous, noiseLevel);
+                        String name = "type " + type + ", " + width + "x" + height + ", noise " + noiseLevel;
+
+                        MotionMask expected = new MotionMask();
+                        expected.reset(width, height);
+                        int expectedDiff = getRgbLoop(previous, current, noiseLevel, expected);
+
+                        LumaFrame previousFrame = new LumaFrame();
+                        LumaFrame currentFrame = new LumaFrame();
+                        previousFrame.load(previous, 0);
+                        currentFrame.load(current, 0);
+                        RegionMask regionMask = new RegionMask();
+                        regionMask.compile("", width, height, 1);
+                        MotionMask motionMask = new MotionMask();
+                        motionMask.reset(width, height);
+                        int diff = scalarEngine.diff(previousFrame, currentFrame, noiseLevel, regionMask, motionMask);
+
+                        assertEquals(expectedDiff, diff, name);
+                        assertEquals(100 * expectedDiff / (width * height), 100 * diff / regionMask.getActiveCount(), name);
+                        assertArrayEquals(expected.getBits(), motionMask.getBits(), name);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void swarEngineMatchesScalarOnRandomFrames() {
+        for (int width : WIDTHS) {
+            for (int height : HEIGHTS) {
+                for (int noiseLevel : NOISE_LEVELS) {
+                    byte[] previous = randomLuma(width * height);
+                    assertSameResult(width, height, previous, changed(previous, noiseLevel), noiseLevel, "");
+                    assertSameResult(width, height, previous, randomLuma(width * height), noiseLevel, "");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void swarEngineMatchesScalarOnEdgeFrames() {
+        for (int width : WIDTHS) {
+            for (int height : HEIGHTS) {
+                int size = width * height;
+                byte[] black = filled(size, 0);
+                byte[] white = filled(size, 255);
+                byte[] stripes = new byte[size];
+                for (int i = 0; i < size; i++) {
+                    stripes[i] = (byte) ((i & 1) == 0 ? 255 : 0);
+                }
+
+                for (int noiseLevel : NOISE_LEVELS) {
+                    assertSameResult(width, height, black, white, noiseLevel, "");
+                    assertSameResult(width, height, white, black, noiseLevel, "");
+                    assertSameResult(width, height, black, black, noiseLevel, "");
+                    assertSameResult(width, height, black, stripes, noiseLevel, "");
+                    // every pixel differs by exactly the noise level, which is not a difference
+                    assertSameResult(width, height, black, filled(size, noiseLevel), noiseLevel, "");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void swarEngineMatchesScalarWithIgnoreRegions() {
+        String[] regions = {
+                "0,0 10,0 10,10 0,10",
+                "60,0 70,0 70,20 60,20",
+                "63,0 65,0 65,17 63,17",
+                "0,0 64,0 64,1 0,1",
+                "5,2 120,2 120,5 5,5; 0,10 128,10 128,12 0,12",
+                "0,0 200,0 200,200 0,200"
+        };
+
+        for (int width : WIDTHS) {
+            for (int height : HEIGHTS) {
+                for (int noiseLevel : NOISE_LEVELS) {
+                    byte[] previous = randomLuma(width * height);
+                    byte[] current = changed(previous, noiseLevel);
+                    for (String region : regions) {
+                        assertSameResult(width, height, previous, current, noiseLevel, region);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void swarEngineMatchesScalarWhenWholeWordsAreIgnored() {
+        int width = 100, height = 10, size = width * height;
+        byte[] previous = filled(size, 0);
+        byte[] current = filled(size, 255);
+
+        for (int noiseLevel : NOISE_LEVELS) {
+            for (int pattern = 0; pattern < 4; pattern++) {
+                RegionMask regionMask = new RegionMask();
+                regionMask.compile("", width, height, 1);
+                long[] bits = regionMask.getBits();
+                switch (pattern) {
+                    case 0:
+                        bits[1] = 0;
+                        break;
+                    case 1:
+                        bits[0] &= ~(1L << 63);
+                        bits[2] &= ~1L;
+                        break;
+                    case 2:
+                        bits[3] = 1L << 63;
+                        bits[4] = 1L;
+                        break;
+                    default:
+                        for (int word = 0; word < bits.length; word += 2) {
+                            bits[word] = 0;
+                        }
+                }
+
+                assertSameResult(luma(width, height, previous), luma(width, height, current), noiseLevel, regionMask,
+                        "pattern " + pattern + ", noise " + noiseLevel);
+            }
+        }
+    }
+
+    private void assertSameResult(int width, int height, byte[] previous, byte[] current, int noiseLevel, String regions) {
+        RegionMask regionMask = new RegionMask();
+        regionMask.compile(regions, width, height, 1);
+        assertSameResult(luma(width, height, previous), luma(width, height, current), noiseLevel, regionMask,
+                width + "x" + height + ", noise " + noiseLevel + ", regions '" + regions + "'");
+    }
+
+    private void assertSameResult(LumaFrame previous, LumaFrame current, int noiseLevel, RegionMask regionMask, String name) {
+        MotionMask scalarMask = new MotionMask();
+        scalarMask.reset(current.getWidth(), current.getHeight());
+        int scalarDiff = scalarEngine.diff(previous, current, noiseLevel, regionMask, scalarMask);
+
+        // a reused mask must come out the same as a fresh one
+        MotionMask swarMask = new MotionMask();
+        swarMask.reset(current.getWidth(), current.getHeight());
+        swarEngine.diff(current, previous, 0, regionMask, swarMask);
+        swarMask.reset(current.getWidth(), current.getHeight());
+        int swarDiff = swarEngine.diff(previous, current, noiseLevel, regionMask, swarMask);
+
+        assertEquals(scalarDiff, swarDiff, name);
+        assertArrayEquals(scalarMask.getBits(), swarMask.getBits(), name);
+
+        int setBits = 0;
+        for (long word : swarMask.getBits()) {
+            setBits += Long.bitCount(word);
+        }
+        assertEquals(swarDiff, setBits, name);
+        if (regionMask.getActiveCount() > 0) {
+            assertEquals(100 * scalarDiff / regionMask.getActiveCount(), 100 * swarDiff / regionMask.getActiveCount(), name);
+        }
+    }
+
+    // the detection loop as it was before the engines, with the motion object replaced by the mask
+    private static int getRgbLoop(BufferedImage previousImage, BufferedImage currentImage, int noiseLevel, MotionMask motionMask) {
+        int diff = 0;
+        boolean prevPixelIsDifferent = false;
+        for (int y = 0; y < previousImage.getHeight(); y++) {
+            for (int x = 0; x < previousImage.getWidth(); x++) {
+                int lightPrev = previousImage.getRGB(x, y) & 0xFF;
+                int lightCurr = currentImage.getRGB(x, y) & 0xFF;
+
+                boolean diffExists = Math.abs(lightPrev - lightCurr) > noiseLevel;
+
+                if (diffExists && prevPixelIsDifferent) {
+                    motionMask.set(y * previousImage.getWidth() + x);
+                    diff++;
+                }
+
+                prevPixelIsDifferent = diffExists;
+            }
+        }
+        return diff;
+    }
+
+    private static LumaFrame luma(int width, int height, byte[] pixels) {
+        BufferedImage image = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(pixels, 0, data, 0, pixels.length);
+
+        LumaFrame frame = new LumaFrame();
+        frame.load(image, 0);
+        return frame;
+    }
+
+    private BufferedImage colourImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+
+    // half of the pixels move around the noise level, the rest change at random
+    private BufferedImage changed(BufferedImage previous, int noiseLevel) {
+        BufferedImage current = new BufferedImage(previous.getWidth(), previous.getHeight(), previous.getType());
+        for (int y = 0; y < previous.getHeight(); y++) {
+            for (int x = 0; x < previous.getWidth(); x++) {
+                int rgb = previous.getRGB(x, y);
+                int blue = random.nextBoolean() ? nearby(rgb & 0xFF, noiseLevel) : random.nextInt(256);
+                current.setRGB(x, y, (rgb & 0xFFFF00) | blue);
+            }
+        }
+        return current;
+    }
+
+    private byte[] changed(byte[] previous, int noiseLevel) {
+        byte[] current = new byte[previous.length];
+        for (int i = 0; i < previous.length; i++) {
+            current[i] = (byte) (random.nextBoolean() ? nearby(previous[i] & 0xFF, noiseLevel) : random.nextInt(256));
+        }
+        return current;
+    }
+
+    private int nearby(int value, int noiseLevel) {
+        int delta = random.nextInt(5) - 2 + (random.nextBoolean() ? noiseLevel : -noiseLevel);
+        return Math.max(0, Math.min(255, value + delta));
+    }
+
+    private byte[] randomLuma(int size) {
+        byte[] luma = new byte[size];
+        random.nextBytes(luma);
+        return luma;
+    }
+
+    private static byte[] filled(int size, int value) {
+        byte[] luma = new byte[size];
+        Arrays.fill(luma, (byte) value);
+        return luma;
+    }
+}
@@ -0,0 +1,134 @@
+package com.rudyii.hsw.motion;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MjpegFrameSourceTest {
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private HttpServer server;
+    private MjpegFrameSource frameSource;
+
+    @AfterEach
+    public void tearDown() {
+        finished.countDown();
+        if (frameSource != null) {
+            frameSource.close();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void framesAreCutByContentLength() throws Exception {
+        byte[] jpeg = jpegWithThumbnail(20000);
+
+        assertArrayEquals(jpeg, serve("multipart/x-mixed-replace; boundary=frame", jpeg, true, "--frame"));
+    }
+
+    @Test
+    public void framesAreCutAtTheBoundaryWithoutContentLength() throws Exception {
+        byte[] jpeg = jpegWithThumbnail(20000);
+
+        assertArrayEquals(jpeg, serve("multipart/x-mixed-replace;boundary=\"--frame\"", jpeg, false, "--frame"));
+    }
+
+    @Test
+    public void framesLargerThanTheInitialBufferAreRead() throws Exception {
+        byte[] jpeg = jpegWithThumbnail(1024 * 1024);
+
+        assertArrayEquals(jpeg, serve("multipart/x-mixed-replace; boundary=frame", jpeg, true, "--frame"));
+    }
+
+    @Test
+    public void streamsWithoutMultipartFramingEndAtTheJpegEndMarker() throws Exception {
+        byte[] jpeg = jpeg(20000);
+
+        assertArrayEquals(jpeg, serve("image/jpeg", jpeg, false, null));
+    }
+
+    @Test
+    public void delimiterAlwaysHasTheLeadingDashes() {
+        assertEquals("--frame", new String(MjpegFrameSource.delimiterOf("multipart/x-mixed-replace; boundary=frame"), ISO_8859_1));
+        assertEquals("--frame", new String(MjpegFrameSource.delimiterOf("multipart/x-mixed-replace;boundary=--frame"), ISO_8859_1));
+        assertEquals("--frame", new String(MjpegFrameSource.delimiterOf("multipart/x-mixed-replace; Boundary=\"frame\""), ISO_8859_1));
+        assertNull(MjpegFrameSource.delimiterOf("image/jpeg"));
+        assertNull(MjpegFrameSource.delimiterOf(null));
+    }
+
+    private byte[] serve(String contentType, byte[] jpeg, boolean withContentLength, String delimiter) throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/video.cgi", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 3; i++) {
+                    out.write(part(jpeg, withContentLength, delimiter));
+                }
+                out.flush();
+                finished.await();
+            } catch (InterruptedException | IOException e) {
+                // the source closed the connection
+            }
+        });
+        server.start();
+
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/video.cgi");
+        frameSource = new MjpegFrameSource("Test", url, null);
+        return frameSource.read();
+    }
+
+    private static byte[] part(byte[] jpeg, boolean withContentLength, String delimiter) throws IOException {
+        ByteArrayOutputStream part = new ByteArrayOutputStream();
+        if (delimiter != null) {
+            part.write((delimiter + "\r\nContent-Type: image/jpeg\r\n").getBytes(ISO_8859_1));
+            if (withContentLength) {
+                part.write(("Content-Length: " + jpeg.length + "\r\n").getBytes(ISO_8859_1));
+            }
+            part.write("\r\n".getBytes(ISO_8859_1));
+        }
+        part.write(jpeg);
+        if (delimiter != null) {
+            part.write("\r\n".getBytes(ISO_8859_1));
+        }
+        return part.toByteArray();
+    }
+
+    // an EXIF thumbnail is a complete JPEG, end marker included, inside the frame's APP1 segment
+    private static byte[] jpegWithThumbnail(int size) throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1});
+        jpeg.write(jpeg(512));
+        jpeg.write(jpeg(size));
+        return jpeg.toByteArray();
+    }
+
+    private static byte[] jpeg(int size) {
+        byte[] jpeg = new byte[size];
+        new Random(size).nextBytes(jpeg);
+        for (int i = 0; i < size; i++) {
+            if (jpeg[i] == (byte) 0xFF) {
+                jpeg[i] = 0;
+            }
+        }
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        jpeg[size - 2] = (byte) 0xFF;
+        jpeg[size - 1] = (byte) 0xD9;
+        return jpeg;
+    }
+}
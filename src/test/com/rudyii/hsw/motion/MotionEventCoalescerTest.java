@@ -0,0 +1,190 @@
+package com.rudyii.hsw.motion;
+
+import com.rudyii.hsw.objects.FrameHandle;
+import com.rudyii.hsw.objects.events.EventBase;
+import com.rudyii.hsw.objects.events.FrameEvent;
+import com.rudyii.hsw.objects.events.MotionDetectedEvent;
+import com.rudyii.hsw.services.EventService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MotionEventCoalescerTest {
+    private static final long WINDOW = 5000L;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final List<EventBase> published = new ArrayList<>();
+    private final List<Runnable> flushes = new ArrayList<>();
+    private final List<ScheduledFuture<?>> futures = new ArrayList<>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    // publishes like EventService does, the event's own frame references are released once it is delivered
+    private final EventService eventService = new EventService() {
+        @Override
+        public void publish(EventBase event) {
+            published.add(event);
+            ((FrameEvent) event).releaseFrames();
+        }
+    };
+
+    // flushes only run when the test closes the window
+    private final DetectionScheduler detectionScheduler = new DetectionScheduler() {
+        @Override
+        public ScheduledFuture<?> scheduleAt(Runnable tick, long timeMillis) {
+            ScheduledFuture<?> future = executor.schedule(() -> {
+            }, 1, TimeUnit.HOURS);
+            flushes.add(tick);
+            futures.add(future);
+            return future;
+        }
+    };
+
+    private final MotionEventCoalescer coalescer = new MotionEventCoalescer("Test", eventService, detectionScheduler);
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void firstDetectionIsPublishedImmediately() {
+        MotionDetectedEvent first = event(10);
+        coalescer.submit(first, WINDOW);
+
+        assertEquals(Arrays.asList(first), published);
+        assertEquals(1, flushes.size());
+    }
+
+    @Test
+    public void detectionsWithoutWindowAreAllPublished() {
+        MotionDetectedEvent first = event(10);
+        MotionDetectedEvent second = event(20);
+        coalescer.submit(first, 0);
+        coalescer.submit(second, 0);
+
+        assertEquals(Arrays.asList(first, second), published);
+        assertTrue(flushes.isEmpty());
+        assertEquals(0, retainedBytes.get());
+    }
+
+    @Test
+    public void peakIsKeptAndOtherFramesAreReleasedRightAway() {
+        coalescer.submit(event(10), WINDOW);
+        MotionDetectedEvent lower = event(20);
+        MotionDetectedEvent peak = event(40);
+        MotionDetectedEvent later = event(30);
+        coalescer.submit(lower, WINDOW);
+        coalescer.submit(peak, WINDOW);
+        coalescer.submit(later, WINDOW);
+
+        assertReleased(lower);
+        assertReleased(later);
+        assertFalse(isReleased(peak));
+        assertEquals(1, published.size());
+
+        closeWindow();
+
+        assertEquals(2, published.size());
+        assertSame(peak, published.get(1));
+        assertEquals(3, peak.getDetections());
+        assertEquals(0, retainedBytes.get());
+    }
+
+    @Test
+    public void replacedPeakIsReleased() {
+        coalescer.submit(event(10), WINDOW);
+        MotionDetectedEvent replaced = event(20);
+        coalescer.submit(replaced, WINDOW);
+        coalescer.submit(event(30), WINDOW);
+
+        assertReleased(replaced);
+    }
+
+    @Test
+    public void windowReopensWhileMotionContinues() {
+        coalescer.submit(event(10), WINDOW);
+        coalescer.submit(event(20), WINDOW);
+        closeWindow();
+        assertEquals(2, published.size());
+        assertEquals(2, flushes.size());
+
+        MotionDetectedEvent stillMoving = event(15);
+        coalescer.submit(stillMoving, WINDOW);
+        assertEquals(2, published.size());
+
+        closeWindow();
+        assertSame(stillMoving, published.get(2));
+        assertEquals(1, stillMoving.getDetections());
+        assertEquals(3, flushes.size());
+    }
+
+    @Test
+    public void quietWindowEndsCoalescing() {
+        coalescer.submit(event(10), WINDOW);
+        closeWindow();
+        assertEquals(1, published.size());
+        assertEquals(1, flushes.size());
+
+        MotionDetectedEvent next = event(10);
+        coalescer.submit(next, WINDOW);
+        assertSame(next, published.get(1));
+        assertEquals(2, flushes.size());
+    }
+
+    @Test
+    public void cancelReleasesThePendingPeak() {
+        coalescer.submit(event(10), WINDOW);
+        MotionDetectedEvent peak = event(20);
+        coalescer.submit(peak, WINDOW);
+
+        coalescer.cancel();
+
+        assertReleased(peak);
+        assertTrue(futures.get(0).isCancelled());
+        assertEquals(0, retainedBytes.get());
+
+        MotionDetectedEvent afterRestart = event(10);
+        coalescer.submit(afterRestart, WINDOW);
+        assertSame(afterRestart, published.get(1));
+    }
+
+    private void closeWindow() {
+        flushes.get(flushes.size() - 1).run();
+    }
+
+    private MotionDetectedEvent event(int motionArea) {
+        return MotionDetectedEvent.builder()
+                .cameraName("Test")
+                .motionArea(motionArea)
+                .currentFrame(new FrameHandle(new byte[100], retainedBytes))
+                .detections(1)
+                .build();
+    }
+
+    private static void assertReleased(MotionDetectedEvent event) {
+        assertThrows(IllegalStateException.class, () -> event.getCurrentFrame().getBytes());
+    }
+
+    private static boolean isReleased(MotionDetectedEvent event) {
+        try {
+            event.getCurrentFrame().getBytes();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+}
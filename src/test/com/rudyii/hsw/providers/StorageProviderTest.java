@@ -0,0 +1,239 @@
+package com.rudyii.hsw.providers;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.*;
+import com.google.common.net.MediaType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class StorageProviderTest {
+    private static final String BUCKET = "test-bucket";
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final List<Long> restoredAt = Collections.synchronizedList(new ArrayList<>());
+    private final List<List<String>> composed = new ArrayList<>();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private volatile String failingBlob;
+    private volatile long failingOffset;
+    private volatile int failures;
+    private volatile boolean failCompose;
+
+    @TempDir
+    Path tempDir;
+
+    private StorageProvider storageProvider;
+
+    @BeforeEach
+    public void setUp() {
+        Bucket bucket = mock(Bucket.class);
+        when(bucket.getName()).thenReturn(BUCKET);
+        Blob blob = mock(Blob.class);
+        Storage storage = mock(Storage.class, invocation -> answer(invocation, bucket, blob));
+
+        storageProvider = new StorageProvider(storage, BUCKET, meterRegistry);
+        ReflectionTestUtils.setField(storageProvider, "chunkSizeKb", CHUNK_SIZE / 1024);
+        ReflectionTestUtils.setField(storageProvider, "parallelParts", 4);
+        ReflectionTestUtils.setField(storageProvider, "chunkRetryDelay", 1L);
+        storageProvider.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storageProvider.shutdown();
+    }
+
+    @Test
+    public void failedChunkIsResentFromItsCapturedState() throws Exception {
+        File file = file(CHUNK_SIZE * 2 + 1000);
+        failingBlob = "clip.mp4";
+        failingOffset = CHUNK_SIZE;
+        failures = 1;
+
+        storageProvider.putData("clip.mp4", MediaType.MP4_VIDEO, file);
+
+        assertArrayEquals(Files.readAllBytes(file.toPath()), objects.get("clip.mp4"));
+        assertEquals(Collections.singletonList((long) CHUNK_SIZE), restoredAt);
+        assertTrue(composed.isEmpty());
+        assertEquals(1.0, meterRegistry.counter("hsw.storage.retried.chunks").count());
+        assertEquals(0.0, meterRegistry.counter("hsw.storage.failed.uploads").count());
+        assertEquals(file.length(), meterRegistry.counter("hsw.storage.uploaded.bytes", "lane", "VIDEO").count());
+    }
+
+    @Test
+    public void partsAreComposedInFileOrder() throws Exception {
+        File file = file(CHUNK_SIZE * 8 + 12345);
+        failingBlob = "clip.mp4.part2";
+        failingOffset = CHUNK_SIZE;
+        failures = 2;
+
+        storageProvider.putData("clip.mp4", MediaType.MP4_VIDEO, file);
+
+        assertArrayEquals(Files.readAllBytes(file.toPath()), objects.get("clip.mp4"));
+        assertEquals(Collections.singletonList(Arrays.asList("clip.mp4.part0", "clip.mp4.part1", "clip.mp4.part2", "clip.mp4.part3")), composed);
+        assertEquals(Collections.singleton("clip.mp4"), objects.keySet());
+        assertEquals(Arrays.asList((long) CHUNK_SIZE, (long) CHUNK_SIZE), restoredAt);
+        assertEquals(2.0, meterRegistry.counter("hsw.storage.retried.chunks").count());
+        assertEquals(file.length(), meterRegistry.counter("hsw.storage.uploaded.bytes", "lane", "VIDEO").count());
+        assertEquals(0.0, meterRegistry.get("hsw.storage.pending.bytes").gauge().value());
+    }
+
+    @Test
+    public void partFailingEveryAttemptFailsTheUpload() throws Exception {
+        File file = file(CHUNK_SIZE * 8);
+        // the last part, so the others are done when the upload gives up
+        failingBlob = "clip.mp4.part3";
+        failingOffset = 0;
+        failures = Integer.MAX_VALUE;
+
+        assertThrows(IOException.class, () -> storageProvider.putData("clip.mp4", MediaType.MP4_VIDEO, file));
+
+        assertTrue(composed.isEmpty());
+        assertTrue(objects.isEmpty(), "parts are deleted: " + objects.keySet());
+        assertEquals(4.0, meterRegistry.counter("hsw.storage.retried.chunks").count());
+        assertEquals(1.0, meterRegistry.counter("hsw.storage.failed.uploads").count());
+        assertEquals(0.0, meterRegistry.get("hsw.storage.pending.bytes").gauge().value());
+    }
+
+    @Test
+    public void failedComposeFailsTheUpload() throws Exception {
+        File file = file(CHUNK_SIZE * 8);
+        failCompose = true;
+
+        assertThrows(StorageException.class, () -> storageProvider.putData("clip.mp4", MediaType.MP4_VIDEO, file));
+
+        assertTrue(objects.isEmpty(), "parts are deleted: " + objects.keySet());
+        assertEquals(1.0, meterRegistry.counter("hsw.storage.failed.uploads").count());
+    }
+
+    private Object answer(InvocationOnMock invocation, Bucket bucket, Blob blob) throws Throwable {
+        switch (invocation.getMethod().getName()) {
+            case "get":
+                return invocation.getArgument(0) instanceof String ? bucket : blob;
+            case "writer":
+                return new FakeWriteChannel(((BlobInfo) invocation.getArgument(0)).getName(), new byte[0], 0);
+            case "compose":
+                return compose(invocation.getArgument(0));
+            case "delete":
+                return objects.remove((String) invocation.getArgument(1)) != null;
+            default:
+                return RETURNS_DEFAULTS.answer(invocation);
+        }
+    }
+
+    private Blob compose(Storage.ComposeRequest request) {
+        if (failCompose) {
+            throw new StorageException(503, "Service Unavailable");
+        }
+
+        List<String> sources = request.getSourceBlobs().stream()
+                .map(Storage.ComposeRequest.SourceBlob::getName)
+                .collect(Collectors.toList());
+        composed.add(sources);
+
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        for (String source : sources) {
+            byte[] part = objects.get(source);
+            target.write(part, 0, part.length);
+        }
+        objects.put(request.getTarget().getName(), target.toByteArray());
+        return null;
+    }
+
+    private File file(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        File file = tempDir.resolve("clip-" + size + ".mp4").toFile();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    // a resumable session: a failing write sends part of the buffer and breaks the channel,
+    // only a channel restored from a captured state goes on, from the captured position
+    private class FakeWriteChannel implements WriteChannel {
+        private final String name;
+        private byte[] session;
+        private long position;
+        private boolean broken;
+
+        private FakeWriteChannel(String name, byte[] session, long position) {
+            this.name = name;
+            this.session = session;
+            this.position = position;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (broken) {
+                throw new IOException("Session of " + name + " is broken");
+            }
+
+            int length = src.remaining();
+            if (name.equals(failingBlob) && position == failingOffset && failures > 0) {
+                failures--;
+                append(src, length / 2);
+                this.broken = true;
+                throw new StorageException(503, "Service Unavailable");
+            }
+
+            append(src, length);
+            return length;
+        }
+
+        private void append(ByteBuffer src, int length) {
+            byte[] grown = Arrays.copyOf(session, (int) position + length);
+            src.get(grown, (int) position, length);
+            this.session = grown;
+            this.position += length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (!broken) {
+                objects.put(name, Arrays.copyOf(session, (int) position));
+            }
+        }
+
+        @Override
+        public void setChunkSize(int chunkSize) {
+        }
+
+        @Override
+        public RestorableState<WriteChannel> capture() {
+            byte[] captured = Arrays.copyOf(session, (int) position);
+            long capturedPosition = position;
+            return () -> {
+                restoredAt.add(capturedPosition);
+                return new FakeWriteChannel(name, captured, capturedPosition);
+            };
+        }
+    }
+}
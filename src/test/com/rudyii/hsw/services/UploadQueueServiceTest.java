@@ -0,0 +1,224 @@
+package com.rudyii.hsw.services;
+
+import com.rudyii.hsw.actions.UploadAction;
+import com.rudyii.hsw.motion.FrameHandleFactory;
+import com.rudyii.hsw.objects.FrameHandle;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UploadQueueServiceTest {
+    private static final long RETRY_DELAY = 200L;
+
+    private final List<UploadQueueService> services = new ArrayList<>();
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final List<String> uploaded = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> attemptTimes = Collections.synchronizedList(new ArrayList<>());
+    private final List<byte[]> frames = Collections.synchronizedList(new ArrayList<>());
+    private volatile Predicate<String> uploader = clip -> true;
+
+    @TempDir
+    Path tempDir;
+
+    private Connection connection;
+    private File spool;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        connection.createStatement().execute("CREATE TABLE IF NOT EXISTS UPLOAD_QUEUE (ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "CAMERA_NAME STRING NOT NULL, FILE_PATH STRING NOT NULL UNIQUE, IMAGE_PATH STRING, ATTEMPTS INTEGER NOT NULL DEFAULT 0, CREATED INTEGER)");
+        spool = tempDir.resolve("spool").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        services.forEach(UploadQueueService::shutdown);
+        connection.close();
+    }
+
+    @Test
+    public void queuedClipIsUploadedFromTheSpool() throws Exception {
+        UploadQueueService service = start(2, 3);
+        AtomicLong retainedBytes = new AtomicLong();
+        byte[] jpeg = {1, 2, 3};
+
+        service.enqueue("Front", clip("front.mp4"), new FrameHandle(jpeg, retainedBytes));
+
+        await(() -> uploaded.size() == 1);
+        assertEquals(new File(spool, "front.mp4").getAbsolutePath(), uploaded.get(0));
+        assertArrayEquals(jpeg, frames.get(0));
+        assertEquals(0L, retainedBytes.get());
+        await(() -> queued() == 0 && !new File(spool, "front.mp4.jpg").exists());
+    }
+
+    @Test
+    public void failedUploadIsRetriedWhenItsBackoffEnds() throws Exception {
+        uploader = clip -> attempts.get(clip) > 1;
+        UploadQueueService service = start(2, 3);
+
+        service.enqueue("Front", clip("front.mp4"), null);
+
+        // no connectivity tick runs here, only the drain scheduled by the failure picks the clip up again
+        await(() -> uploaded.size() == 1);
+        assertEquals(2, attempts.get(new File(spool, "front.mp4").getAbsolutePath()));
+        assertTrue(attemptTimes.get(1) - attemptTimes.get(0) >= RETRY_DELAY);
+        await(() -> queued() == 0);
+    }
+
+    @Test
+    public void uploadFailingEveryAttemptIsDeadLettered() throws Exception {
+        uploader = clip -> false;
+        UploadQueueService service = start(1, 2);
+
+        service.enqueue("Front", clip("front.mp4"), null);
+
+        await(() -> queued() == 0);
+        assertEquals(2, attempts.get(new File(spool, "front.mp4").getAbsolutePath()));
+        assertTrue(uploaded.isEmpty());
+        assertTrue(new File(new File(spool, "dead"), "front.mp4").exists());
+    }
+
+    @Test
+    public void pendingUploadsAreResumedOnRestart() throws Exception {
+        UploadQueueService offline = start(2, 3);
+        ReflectionTestUtils.setField(offline, "online", false);
+        offline.enqueue("Front", clip("front.mp4"), null);
+        offline.enqueue("Back", clip("back.mp4"), null);
+        offline.shutdown();
+        assertEquals(2, queued());
+        assertTrue(uploaded.isEmpty());
+
+        start(2, 3);
+
+        await(() -> uploaded.size() == 2);
+        await(() -> queued() == 0);
+    }
+
+    @Test
+    public void concurrentEnqueuesAreAllUploadedWithoutTicks() throws Exception {
+        UploadQueueService service = start(1, 3);
+        int clips = 200;
+        List<File> candidates = new ArrayList<>();
+        for (int i = 0; i < clips; i++) {
+            candidates.add(clip("clip" + i + ".mp4"));
+        }
+
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        candidates.forEach(candidate -> producers.submit(() -> service.enqueue("Front", candidate, null)));
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(10, TimeUnit.SECONDS));
+
+        await(() -> uploaded.size() == clips);
+        await(() -> queued() == 0);
+    }
+
+    private UploadQueueService start(int workers, int maxAttempts) {
+        ApplicationContext context = mock(ApplicationContext.class);
+        when(context.getBean(UploadAction.class)).thenAnswer(invocation -> new FakeUploadAction());
+        IspService ispService = mock(IspService.class);
+        when(ispService.internetIsAvailable()).thenReturn(true);
+
+        UploadQueueService service = new UploadQueueService(connection, context, ispService,
+                new FrameHandleFactory(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "workersCount", workers);
+        ReflectionTestUtils.setField(service, "spoolDir", spool.getPath());
+        ReflectionTestUtils.setField(service, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(service, "retryDelay", RETRY_DELAY);
+        service.init();
+        services.add(service);
+        return service;
+    }
+
+    private File clip(String name) throws IOException {
+        File clip = tempDir.resolve(name).toFile();
+        Files.write(clip.toPath(), name.getBytes());
+        return clip;
+    }
+
+    private int queued() {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM UPLOAD_QUEUE")) {
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the upload queue");
+            Thread.sleep(10L);
+        }
+    }
+
+    private class FakeUploadAction extends UploadAction {
+        private File clip;
+        private FrameHandle frame;
+
+        private FakeUploadAction() {
+            super(null, null, null);
+        }
+
+        @Override
+        public UploadAction withUploadCandidate(File uploadCandidate) {
+            this.clip = uploadCandidate;
+            return this;
+        }
+
+        @Override
+        public UploadAction andFrame(FrameHandle frame) {
+            this.frame = frame;
+            return this;
+        }
+
+        @Override
+        public boolean uploadFile() {
+            String path = clip.getAbsolutePath();
+            attempts.merge(path, 1, Integer::sum);
+            attemptTimes.add(System.currentTimeMillis());
+            if (frame != null) {
+                frames.add(frame.getBytes());
+                frame.release();
+            }
+
+            if (!uploader.test(path)) {
+                return false;
+            }
+            uploaded.add(path);
+            return true;
+        }
+    }
+}